@@ -0,0 +1,61 @@
+package quickml.data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * The predictions for a batch of instances, kept as a matrix of probabilities with a row per instance and a column
+ * per classification, in a single double[] in row-major order.
+ */
+public class BatchPredictions {
+
+    private final ClassificationDictionary classifications;
+    private final double[] probabilities;
+
+    /**
+     * @param probabilities the probability of every classification for each instance in turn, in the order of the
+     *                      dictionary
+     */
+    public BatchPredictions(ClassificationDictionary classifications, double[] probabilities) {
+        this.classifications = classifications;
+        this.probabilities = probabilities;
+    }
+
+    /**
+     * @return the number of instances
+     */
+    public int size() {
+        return probabilities.length / classifications.size();
+    }
+
+    /**
+     * @return the classifications in the order of the columns
+     */
+    public List<Serializable> getClassifications() {
+        return classifications.getClassifications();
+    }
+
+    public double getProbability(int instance, int classificationIndex) {
+        return probabilities[instance * classifications.size() + classificationIndex];
+    }
+
+    public double getProbability(int instance, Serializable classification) {
+        final int classificationIndex = classifications.indexOf(classification);
+        return classificationIndex < 0 ? 0 : getProbability(instance, classificationIndex);
+    }
+
+    /**
+     * @return the matrix of probabilities itself, in row-major order
+     */
+    public double[] getProbabilities() {
+        return probabilities;
+    }
+
+    public PredictionMap getPrediction(int instance) {
+        final PredictionMap probsByClassification = PredictionMap.newMap(classifications);
+        for (int classificationIndex = 0; classificationIndex < classifications.size(); classificationIndex++) {
+            probsByClassification.setProbability(classificationIndex, getProbability(instance, classificationIndex));
+        }
+        return probsByClassification;
+    }
+}
@@ -0,0 +1,73 @@
+package quickml.data;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable numbering of the classifications of a model, shared by the {@link PredictionMap}s it predicts so
+ * that they can keep their probabilities in a double[] indexed by classification.
+ */
+public final class ClassificationDictionary implements Serializable {
+    private static final long serialVersionUID = 3860375419820127716L;
+
+    private final Serializable[] classifications;
+    private final Map<Serializable, Integer> indices;
+
+    /**
+     * @param classifications the classifications, which are numbered in the order of their iteration
+     */
+    public ClassificationDictionary(Collection<? extends Serializable> classifications) {
+        this.classifications = classifications.toArray(new Serializable[classifications.size()]);
+        this.indices = Maps.newHashMapWithExpectedSize(this.classifications.length);
+        for (int index = 0; index < this.classifications.length; index++) {
+            Preconditions.checkArgument(indices.put(this.classifications[index], index) == null, "%s is listed twice", this.classifications[index]);
+        }
+    }
+
+    public int size() {
+        return classifications.length;
+    }
+
+    public Serializable get(int index) {
+        return classifications[index];
+    }
+
+    /**
+     * @return the index of the classification, or -1 if it isn't in this dictionary
+     */
+    public int indexOf(Object classification) {
+        final Integer index = indices.get(classification);
+        return index == null ? -1 : index;
+    }
+
+    public List<Serializable> getClassifications() {
+        return Collections.unmodifiableList(Arrays.asList(classifications));
+    }
+
+    /**
+     * Dictionaries are equal if they number the same classifications in the same way.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return Arrays.equals(classifications, ((ClassificationDictionary) o).classifications);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(classifications);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(classifications);
+    }
+}
@@ -0,0 +1,476 @@
+package quickml.data;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A column oriented, dictionary encoded copy of a set of {@link ClassifierInstance}s, built once so that
+ * tree builders can read attribute values and labels by row index instead of through per-instance hash maps.
+ * <p/>
+ * An attribute is numeric if every value it takes is a {@link Number}, in which case its column holds the
+ * values as doubles (rows without the attribute hold 0, the value a NumericBranch assumes for a missing
+ * attribute).  Otherwise its column holds an int code per row, with {@link #MISSING_CODE} for rows that
+ * don't have the attribute, and codes can be mapped back to attribute values with {@link #getCategoricalValue}.
+ * Labels are stored as ordinals into a label dictionary.
+ * <p/>
+ * The arrays returned by the getters are the internal storage and must not be modified.
+ * <p/>
+ * Training data too big for the heap can be written to a file with {@link #write} and memory-mapped back with
+ * {@link #map}, in which case its columns are only available as buffers over the file (see
+ * {@link #isInMemory}), which the operating system pages in as they are scanned.
+ */
+public final class ColumnarTrainingData {
+
+    public static final int MISSING_CODE = 0;
+
+    private static final int FILE_MAGIC = 0x514d4344;
+
+    private static final int FILE_VERSION = 1;
+
+    /**
+     * The magic number, version and offset of the metadata at the end of the file.
+     */
+    private static final int FILE_HEADER_BYTES = 16;
+
+    /**
+     * Each column of a file is mapped as a single buffer, which can't be more than 2GB.
+     */
+    private static final int MAX_MAPPED_ROWS = Integer.MAX_VALUE / 8;
+
+    private final int size;
+    private final String[] attributeNames;
+    private final Map<String, Integer> attributeIds;
+    private final boolean[] numericAttributes;
+    private final double[][] numericColumns;
+    private final int[][] categoricalColumns;
+    private final Serializable[][] categoricalValues;
+    private final int[] labels;
+    private final Serializable[] labelValues;
+    private final double[] weights;
+    // only for memory-mapped training data, which has none of the columns above
+    private final DoubleBuffer[] numericBuffers;
+    private final IntBuffer[] categoricalBuffers;
+    private final IntBuffer labelBuffer;
+    private final DoubleBuffer weightBuffer;
+
+    private ColumnarTrainingData(int size, String[] attributeNames, Map<String, Integer> attributeIds, double[][] numericColumns, int[][] categoricalColumns,
+                                 Serializable[][] categoricalValues, int[] labels, Serializable[] labelValues, double[] weights) {
+        this.size = size;
+        this.attributeNames = attributeNames;
+        this.attributeIds = attributeIds;
+        this.numericAttributes = new boolean[attributeNames.length];
+        for (int attribute = 0; attribute < attributeNames.length; attribute++) {
+            numericAttributes[attribute] = numericColumns[attribute] != null;
+        }
+        this.numericColumns = numericColumns;
+        this.categoricalColumns = categoricalColumns;
+        this.categoricalValues = categoricalValues;
+        this.labels = labels;
+        this.labelValues = labelValues;
+        this.weights = weights;
+        this.numericBuffers = null;
+        this.categoricalBuffers = null;
+        this.labelBuffer = null;
+        this.weightBuffer = null;
+    }
+
+    private ColumnarTrainingData(int size, String[] attributeNames, Map<String, Integer> attributeIds, boolean[] numericAttributes, DoubleBuffer[] numericBuffers,
+                                 IntBuffer[] categoricalBuffers, Serializable[][] categoricalValues, IntBuffer labelBuffer, Serializable[] labelValues, DoubleBuffer weightBuffer) {
+        this.size = size;
+        this.attributeNames = attributeNames;
+        this.attributeIds = attributeIds;
+        this.numericAttributes = numericAttributes;
+        this.numericColumns = null;
+        this.categoricalColumns = null;
+        this.categoricalValues = categoricalValues;
+        this.labels = null;
+        this.labelValues = labelValues;
+        this.weights = null;
+        this.numericBuffers = numericBuffers;
+        this.categoricalBuffers = categoricalBuffers;
+        this.labelBuffer = labelBuffer;
+        this.weightBuffer = weightBuffer;
+    }
+
+    /**
+     * Encodes the instances into columns.  The instances are read twice, once to establish the attributes,
+     * their types and the labels, and once to fill in the columns.  Iterables that aren't collections (eg. lazily
+     * filtered views, which may yield different instances each time) are copied to a list first so that both reads
+     * see the same instances.
+     */
+    public static ColumnarTrainingData create(Iterable<? extends ClassifierInstance> trainingData) {
+        final Collection<? extends ClassifierInstance> instances = trainingData instanceof Collection
+                ? (Collection<? extends ClassifierInstance>) trainingData
+                : Lists.newArrayList(trainingData);
+        final Schema schema = new Schema(instances);
+        final int numAttributes = schema.attributeNames.size();
+        final double[][] numericColumns = new double[numAttributes][];
+        final int[][] categoricalColumns = new int[numAttributes][];
+        for (int attribute = 0; attribute < numAttributes; attribute++) {
+            if (schema.isNumeric(attribute)) {
+                numericColumns[attribute] = new double[schema.size];
+            } else {
+                categoricalColumns[attribute] = new int[schema.size];
+            }
+        }
+        final int[] labels = new int[schema.size];
+        final double[] weights = new double[schema.size];
+        int row = 0;
+        for (ClassifierInstance instance : instances) {
+            Preconditions.checkState(row < schema.size, "Instances changed while being encoded");
+            labels[row] = schema.labelOrdinals.get(instance.getLabel());
+            weights[row] = instance.getWeight();
+            for (Map.Entry<String, Serializable> attributeEntry : instance.getAttributes().entrySet()) {
+                final int attribute = schema.attributeIds.get(attributeEntry.getKey());
+                if (numericColumns[attribute] != null) {
+                    numericColumns[attribute][row] = ((Number) attributeEntry.getValue()).doubleValue();
+                } else {
+                    categoricalColumns[attribute][row] = schema.encode(attribute, attributeEntry.getValue());
+                }
+            }
+            row++;
+        }
+        Preconditions.checkState(row == schema.size, "Instances changed while being encoded");
+        return new ColumnarTrainingData(schema.size, schema.getAttributeNames(), schema.attributeIds, numericColumns,
+                categoricalColumns, schema.getCategoricalValues(), labels, schema.getLabelValues(), weights);
+    }
+
+    /**
+     * Encodes the instances into columns in a file that {@link #map} can read them back from, without holding more
+     * than the dictionaries of labels and categorical values on the heap.  The instances are read twice, so must
+     * be the same each time they are iterated over.
+     */
+    public static void write(Iterable<? extends ClassifierInstance> instances, File file) throws IOException {
+        final Schema schema = new Schema(instances);
+        Preconditions.checkArgument(schema.size <= MAX_MAPPED_ROWS, "Can't write more than %s instances to a file", MAX_MAPPED_ROWS);
+        final int numAttributes = schema.attributeNames.size();
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            randomAccessFile.setLength(0);
+            long offset = FILE_HEADER_BYTES;
+            final IntBuffer labels = mapColumn(channel, FileChannel.MapMode.READ_WRITE, offset, 4L * schema.size).asIntBuffer();
+            offset = nextColumnOffset(offset, 4L * schema.size);
+            final DoubleBuffer weights = mapColumn(channel, FileChannel.MapMode.READ_WRITE, offset, 8L * schema.size).asDoubleBuffer();
+            offset = nextColumnOffset(offset, 8L * schema.size);
+            final DoubleBuffer[] numericColumns = new DoubleBuffer[numAttributes];
+            final IntBuffer[] categoricalColumns = new IntBuffer[numAttributes];
+            for (int attribute = 0; attribute < numAttributes; attribute++) {
+                if (schema.isNumeric(attribute)) {
+                    numericColumns[attribute] = mapColumn(channel, FileChannel.MapMode.READ_WRITE, offset, 8L * schema.size).asDoubleBuffer();
+                    offset = nextColumnOffset(offset, 8L * schema.size);
+                } else {
+                    categoricalColumns[attribute] = mapColumn(channel, FileChannel.MapMode.READ_WRITE, offset, 4L * schema.size).asIntBuffer();
+                    offset = nextColumnOffset(offset, 4L * schema.size);
+                }
+            }
+            int row = 0;
+            for (ClassifierInstance instance : instances) {
+                Preconditions.checkState(row < schema.size, "Instances changed while being encoded");
+                labels.put(row, schema.labelOrdinals.get(instance.getLabel()));
+                weights.put(row, instance.getWeight());
+                for (Map.Entry<String, Serializable> attributeEntry : instance.getAttributes().entrySet()) {
+                    final int attribute = schema.attributeIds.get(attributeEntry.getKey());
+                    if (numericColumns[attribute] != null) {
+                        numericColumns[attribute].put(row, ((Number) attributeEntry.getValue()).doubleValue());
+                    } else {
+                        categoricalColumns[attribute].put(row, schema.encode(attribute, attributeEntry.getValue()));
+                    }
+                }
+                row++;
+            }
+            Preconditions.checkState(row == schema.size, "Instances changed while being encoded");
+
+            final ByteArrayOutputStream metadata = new ByteArrayOutputStream();
+            try (ObjectOutputStream metadataOutput = new ObjectOutputStream(metadata)) {
+                metadataOutput.writeInt(schema.size);
+                metadataOutput.writeObject(schema.getAttributeNames());
+                metadataOutput.writeObject(schema.getCategoricalValues());
+                metadataOutput.writeObject(schema.getLabelValues());
+            }
+            writeFully(channel, ByteBuffer.wrap(metadata.toByteArray()), offset);
+            final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+            header.putInt(FILE_MAGIC).putInt(FILE_VERSION).putLong(offset).flip();
+            writeFully(channel, header, 0);
+        }
+    }
+
+    /**
+     * Memory-maps training data that was written to a file by {@link #write}.  The file must not be modified while
+     * the training data is in use.
+     */
+    public static ColumnarTrainingData map(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != FILE_MAGIC || header.getInt() != FILE_VERSION) {
+                throw new IOException(file + " isn't a columnar training data file");
+            }
+            final long metadataOffset = header.getLong();
+            final ByteBuffer metadata = ByteBuffer.allocate((int) (channel.size() - metadataOffset));
+            readFully(channel, metadata, metadataOffset);
+            final int size;
+            final String[] attributeNames;
+            final Serializable[][] categoricalValues;
+            final Serializable[] labelValues;
+            try (ObjectInputStream metadataInput = new ObjectInputStream(new ByteArrayInputStream(metadata.array()))) {
+                size = metadataInput.readInt();
+                attributeNames = (String[]) metadataInput.readObject();
+                categoricalValues = (Serializable[][]) metadataInput.readObject();
+                labelValues = (Serializable[]) metadataInput.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Can't read the metadata of " + file, e);
+            }
+
+            final Map<String, Integer> attributeIds = Maps.newLinkedHashMap();
+            final boolean[] numericAttributes = new boolean[attributeNames.length];
+            long offset = FILE_HEADER_BYTES;
+            final IntBuffer labels = mapColumn(channel, FileChannel.MapMode.READ_ONLY, offset, 4L * size).asIntBuffer();
+            offset = nextColumnOffset(offset, 4L * size);
+            final DoubleBuffer weights = mapColumn(channel, FileChannel.MapMode.READ_ONLY, offset, 8L * size).asDoubleBuffer();
+            offset = nextColumnOffset(offset, 8L * size);
+            final DoubleBuffer[] numericColumns = new DoubleBuffer[attributeNames.length];
+            final IntBuffer[] categoricalColumns = new IntBuffer[attributeNames.length];
+            for (int attribute = 0; attribute < attributeNames.length; attribute++) {
+                attributeIds.put(attributeNames[attribute], attribute);
+                numericAttributes[attribute] = categoricalValues[attribute] == null;
+                if (numericAttributes[attribute]) {
+                    numericColumns[attribute] = mapColumn(channel, FileChannel.MapMode.READ_ONLY, offset, 8L * size).asDoubleBuffer();
+                    offset = nextColumnOffset(offset, 8L * size);
+                } else {
+                    categoricalColumns[attribute] = mapColumn(channel, FileChannel.MapMode.READ_ONLY, offset, 4L * size).asIntBuffer();
+                    offset = nextColumnOffset(offset, 4L * size);
+                }
+            }
+            return new ColumnarTrainingData(size, attributeNames, attributeIds, numericAttributes, numericColumns,
+                    categoricalColumns, categoricalValues, labels, labelValues, weights);
+        }
+    }
+
+    private static ByteBuffer mapColumn(FileChannel channel, FileChannel.MapMode mode, long offset, long bytes) throws IOException {
+        return channel.map(mode, offset, bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return the offset of the column after one at offset, columns being aligned to 8 bytes
+     */
+    private static long nextColumnOffset(long offset, long bytes) {
+        return (offset + bytes + 7) & ~7L;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, offset);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            offset += read;
+        }
+    }
+
+    /**
+     * @return the number of rows (instances)
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getNumAttributes() {
+        return attributeNames.length;
+    }
+
+    public String getAttributeName(int attribute) {
+        return attributeNames[attribute];
+    }
+
+    /**
+     * @return the id of the attribute, or -1 if no instance had it
+     */
+    public int getAttributeId(String attributeName) {
+        Integer attribute = attributeIds.get(attributeName);
+        return attribute != null ? attribute : -1;
+    }
+
+    public boolean isNumeric(int attribute) {
+        return numericAttributes[attribute];
+    }
+
+    /**
+     * @return true if the columns are on the heap, false if they are memory-mapped from a file, in which case they
+     * can only be read through the buffer getters
+     */
+    public boolean isInMemory() {
+        return labels != null;
+    }
+
+    public double[] getNumericColumn(int attribute) {
+        Preconditions.checkArgument(isNumeric(attribute), "%s is not a numeric attribute", attributeNames[attribute]);
+        checkInMemory();
+        return numericColumns[attribute];
+    }
+
+    public int[] getCategoricalColumn(int attribute) {
+        Preconditions.checkArgument(!isNumeric(attribute), "%s is not a categorical attribute", attributeNames[attribute]);
+        checkInMemory();
+        return categoricalColumns[attribute];
+    }
+
+    public DoubleBuffer getNumericColumnBuffer(int attribute) {
+        Preconditions.checkArgument(isNumeric(attribute), "%s is not a numeric attribute", attributeNames[attribute]);
+        return isInMemory() ? DoubleBuffer.wrap(numericColumns[attribute]) : numericBuffers[attribute].duplicate();
+    }
+
+    public IntBuffer getCategoricalColumnBuffer(int attribute) {
+        Preconditions.checkArgument(!isNumeric(attribute), "%s is not a categorical attribute", attributeNames[attribute]);
+        return isInMemory() ? IntBuffer.wrap(categoricalColumns[attribute]) : categoricalBuffers[attribute].duplicate();
+    }
+
+    /**
+     * @return the number of distinct codes of a categorical attribute, including {@link #MISSING_CODE}
+     */
+    public int getNumCategoricalValues(int attribute) {
+        return categoricalValues[attribute].length;
+    }
+
+    /**
+     * @return the attribute value that code stands for, or null for {@link #MISSING_CODE}
+     */
+    public Serializable getCategoricalValue(int attribute, int code) {
+        return categoricalValues[attribute][code];
+    }
+
+    /**
+     * @return the label of every row as an ordinal into the label dictionary
+     */
+    public int[] getLabels() {
+        checkInMemory();
+        return labels;
+    }
+
+    public IntBuffer getLabelBuffer() {
+        return isInMemory() ? IntBuffer.wrap(labels) : labelBuffer.duplicate();
+    }
+
+    public int getNumLabels() {
+        return labelValues.length;
+    }
+
+    public Serializable getLabelValue(int ordinal) {
+        return labelValues[ordinal];
+    }
+
+    public double[] getWeights() {
+        checkInMemory();
+        return weights;
+    }
+
+    public DoubleBuffer getWeightBuffer() {
+        return isInMemory() ? DoubleBuffer.wrap(weights) : weightBuffer.duplicate();
+    }
+
+    private void checkInMemory() {
+        Preconditions.checkState(isInMemory(), "The columns of memory-mapped training data can only be read through buffers");
+    }
+
+    /**
+     * The attributes, their types and the labels of some instances, found by reading through them once, along with
+     * the codes of categorical values, which are assigned as the columns are filled in.
+     */
+    private static final class Schema {
+        private final Map<String, Integer> attributeIds = Maps.newLinkedHashMap();
+        private final List<String> attributeNames = Lists.newArrayList();
+        private final BitSet nonNumericAttributes = new BitSet();
+        private final Map<Serializable, Integer> labelOrdinals = Maps.newLinkedHashMap();
+        private final List<Map<Serializable, Integer>> codesByAttribute = Lists.newArrayList();
+        private int size;
+
+        private Schema(Iterable<? extends ClassifierInstance> instances) {
+            for (ClassifierInstance instance : instances) {
+                size++;
+                if (!labelOrdinals.containsKey(instance.getLabel())) {
+                    labelOrdinals.put(instance.getLabel(), labelOrdinals.size());
+                }
+                for (Map.Entry<String, Serializable> attributeEntry : instance.getAttributes().entrySet()) {
+                    Integer attribute = attributeIds.get(attributeEntry.getKey());
+                    if (attribute == null) {
+                        attribute = attributeNames.size();
+                        attributeIds.put(attributeEntry.getKey(), attribute);
+                        attributeNames.add(attributeEntry.getKey());
+                    }
+                    if (!(attributeEntry.getValue() instanceof Number)) {
+                        nonNumericAttributes.set(attribute);
+                    }
+                }
+            }
+            Preconditions.checkArgument(size > 0, "Can't create columnar training data from no instances");
+            for (int attribute = 0; attribute < attributeNames.size(); attribute++) {
+                codesByAttribute.add(isNumeric(attribute) ? null : Maps.<Serializable, Integer>newHashMap());
+            }
+        }
+
+        private boolean isNumeric(int attribute) {
+            return !nonNumericAttributes.get(attribute);
+        }
+
+        /**
+         * @return the code of a value of a categorical attribute, assigning it one if it's new
+         */
+        private int encode(int attribute, Serializable value) {
+            if (value == null) {
+                return MISSING_CODE;
+            }
+            final Map<Serializable, Integer> codes = codesByAttribute.get(attribute);
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = codes.size() + 1;
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        private String[] getAttributeNames() {
+            return attributeNames.toArray(new String[attributeNames.size()]);
+        }
+
+        private Serializable[][] getCategoricalValues() {
+            final Serializable[][] categoricalValues = new Serializable[attributeNames.size()][];
+            for (int attribute = 0; attribute < categoricalValues.length; attribute++) {
+                final Map<Serializable, Integer> codes = codesByAttribute.get(attribute);
+                if (codes != null) {
+                    categoricalValues[attribute] = new Serializable[codes.size() + 1];
+                    for (Map.Entry<Serializable, Integer> codeEntry : codes.entrySet()) {
+                        categoricalValues[attribute][codeEntry.getValue()] = codeEntry.getKey();
+                    }
+                }
+            }
+            return categoricalValues;
+        }
+
+        private Serializable[] getLabelValues() {
+            final Serializable[] labelValues = new Serializable[labelOrdinals.size()];
+            for (Map.Entry<Serializable, Integer> labelEntry : labelOrdinals.entrySet()) {
+                labelValues[labelEntry.getValue()] = labelEntry.getKey();
+            }
+            return labelValues;
+        }
+    }
+}
@@ -1,9 +1,16 @@
 package quickml.data;
 
+import com.google.common.base.Preconditions;
+
 import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
@@ -11,7 +18,7 @@ import java.util.Set;
  */
 public class PredictionMap implements Map<Serializable, Double>, Serializable{
 
-    private final Map<Serializable, Double> map;
+    private Map<Serializable, Double> map;
     private final Double defaultValue = Double.valueOf(0);
 
     public PredictionMap(Map<Serializable, Double> map) {
@@ -22,6 +29,59 @@ public class PredictionMap implements Map<Serializable, Double>, Serializable{
         return new PredictionMap(new HashMap<Serializable, Double>());
     }
 
+    /**
+     * @return an empty map that keeps the probabilities of the dictionary's classifications in a double[], which
+     * they can be read from and summed into by index without boxing.  It turns into an ordinary map if a
+     * classification that isn't in the dictionary, or a null probability, is put into it.
+     */
+    public static PredictionMap newMap(ClassificationDictionary dictionary) {
+        return new PredictionMap(new DictionaryMap(dictionary));
+    }
+
+    /**
+     * @return the dictionary of the classifications whose probabilities this map keeps by index, or null if it
+     * doesn't
+     */
+    public ClassificationDictionary getDictionary() {
+        return map instanceof DictionaryMap ? ((DictionaryMap) map).dictionary : null;
+    }
+
+    /**
+     * @return whether this map has a probability for the classification with the index in {@link #getDictionary}
+     */
+    public boolean hasProbability(int classificationIndex) {
+        return getDictionaryMap().present[classificationIndex];
+    }
+
+    /**
+     * @return the probability of the classification with the index in {@link #getDictionary}, or 0 if it has none
+     */
+    public double getProbability(int classificationIndex) {
+        final DictionaryMap dictionaryMap = getDictionaryMap();
+        return dictionaryMap.present[classificationIndex] ? dictionaryMap.probabilities[classificationIndex] : 0;
+    }
+
+    public void setProbability(int classificationIndex, double probability) {
+        final DictionaryMap dictionaryMap = getDictionaryMap();
+        dictionaryMap.markPresent(classificationIndex);
+        dictionaryMap.probabilities[classificationIndex] = probability;
+    }
+
+    /**
+     * Adds to the probability of the classification with the index in {@link #getDictionary}, which is 0 until
+     * it is set or added to.
+     */
+    public void addProbability(int classificationIndex, double probability) {
+        final DictionaryMap dictionaryMap = getDictionaryMap();
+        dictionaryMap.markPresent(classificationIndex);
+        dictionaryMap.probabilities[classificationIndex] += probability;
+    }
+
+    private DictionaryMap getDictionaryMap() {
+        Preconditions.checkState(map instanceof DictionaryMap, "This map isn't backed by a classification dictionary");
+        return (DictionaryMap) map;
+    }
+
     @Override
     public int size() {
         return map.size();
@@ -50,6 +110,9 @@ public class PredictionMap implements Map<Serializable, Double>, Serializable{
 
     @Override
     public Double put(Serializable key, Double value) {
+        if (map instanceof DictionaryMap && (value == null || ((DictionaryMap) map).dictionary.indexOf(key) < 0)) {
+            map = new HashMap<>(map);
+        }
         return map.put(key,value);
     }
 
@@ -60,7 +123,9 @@ public class PredictionMap implements Map<Serializable, Double>, Serializable{
 
     @Override
     public void putAll(Map<? extends Serializable, ? extends Double> m) {
-        map.putAll(m);
+        for (Entry<? extends Serializable, ? extends Double> entry : m.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
     }
 
     @Override
@@ -109,4 +174,166 @@ public class PredictionMap implements Map<Serializable, Double>, Serializable{
     public String toString() {
         return map.toString();
     }
+
+    /**
+     * A map of the classifications of a dictionary to their probabilities, which keeps the probabilities in a
+     * double[] and flags which classifications are in the map in a boolean[].
+     */
+    private static class DictionaryMap extends AbstractMap<Serializable, Double> implements Serializable {
+        private static final long serialVersionUID = -7101640379213960257L;
+
+        final ClassificationDictionary dictionary;
+        final double[] probabilities;
+        final boolean[] present;
+        int size;
+
+        DictionaryMap(ClassificationDictionary dictionary) {
+            this.dictionary = dictionary;
+            this.probabilities = new double[dictionary.size()];
+            this.present = new boolean[dictionary.size()];
+        }
+
+        void markPresent(int index) {
+            if (!present[index]) {
+                present[index] = true;
+                probabilities[index] = 0;
+                size++;
+            }
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            final int index = dictionary.indexOf(key);
+            return index >= 0 && present[index];
+        }
+
+        @Override
+        public Double get(Object key) {
+            final int index = dictionary.indexOf(key);
+            return index >= 0 && present[index] ? probabilities[index] : null;
+        }
+
+        @Override
+        public Double put(Serializable key, Double value) {
+            final int index = dictionary.indexOf(key);
+            Preconditions.checkArgument(index >= 0, "%s isn't in the classification dictionary", key);
+            final Double previous = get(key);
+            markPresent(index);
+            probabilities[index] = value;
+            return previous;
+        }
+
+        @Override
+        public Double remove(Object key) {
+            final Double previous = get(key);
+            if (previous != null) {
+                present[dictionary.indexOf(key)] = false;
+                size--;
+            }
+            return previous;
+        }
+
+        @Override
+        public void clear() {
+            Arrays.fill(present, false);
+            size = 0;
+        }
+
+        @Override
+        public Set<Entry<Serializable, Double>> entrySet() {
+            return new AbstractSet<Entry<Serializable, Double>>() {
+                @Override
+                public Iterator<Entry<Serializable, Double>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+
+        private class EntryIterator implements Iterator<Entry<Serializable, Double>> {
+            private int next = nextPresent(0);
+            private int last = -1;
+
+            private int nextPresent(int from) {
+                int index = from;
+                while (index < present.length && !present[index]) {
+                    index++;
+                }
+                return index;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < present.length;
+            }
+
+            @Override
+            public Entry<Serializable, Double> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                last = next;
+                next = nextPresent(next + 1);
+                return new ProbabilityEntry(last);
+            }
+
+            @Override
+            public void remove() {
+                Preconditions.checkState(last >= 0 && present[last], "next hasn't been called since the last remove");
+                present[last] = false;
+                size--;
+            }
+        }
+
+        private class ProbabilityEntry implements Entry<Serializable, Double> {
+            private final int index;
+
+            ProbabilityEntry(int index) {
+                this.index = index;
+            }
+
+            @Override
+            public Serializable getKey() {
+                return dictionary.get(index);
+            }
+
+            @Override
+            public Double getValue() {
+                return probabilities[index];
+            }
+
+            @Override
+            public Double setValue(Double value) {
+                final Double previous = probabilities[index];
+                probabilities[index] = value;
+                return previous;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (!(o instanceof Entry)) return false;
+                final Entry<?, ?> that = (Entry<?, ?>) o;
+                return getKey().equals(that.getKey()) && getValue().equals(that.getValue());
+            }
+
+            @Override
+            public int hashCode() {
+                return getKey().hashCode() ^ getValue().hashCode();
+            }
+
+            @Override
+            public String toString() {
+                return getKey() + "=" + getValue();
+            }
+        }
+    }
 }
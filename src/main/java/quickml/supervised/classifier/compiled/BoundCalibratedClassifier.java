@@ -0,0 +1,36 @@
+package quickml.supervised.classifier.compiled;
+
+import quickml.data.PredictionMap;
+import quickml.supervised.regressionModel.IsotonicRegression.PoolAdjacentViolatorsModel;
+
+import java.io.Serializable;
+
+/**
+ * A {@link quickml.supervised.calibratedPredictiveModel.CalibratedClassifier} bound to a schema.
+ */
+final class BoundCalibratedClassifier extends BoundClassifier {
+    private static final long serialVersionUID = 5190348826270553143L;
+
+    private final BoundClassifier wrappedClassifier;
+    private final PoolAdjacentViolatorsModel pavFunction;
+
+    BoundCalibratedClassifier(BoundClassifier wrappedClassifier, PoolAdjacentViolatorsModel pavFunction) {
+        super(wrappedClassifier.getSchema());
+        this.wrappedClassifier = wrappedClassifier;
+        this.pavFunction = pavFunction;
+    }
+
+    @Override
+    public double getProbability(double[] numericValues, int[] categoricalCodes, Serializable classification) {
+        return pavFunction.predict(wrappedClassifier.getProbability(numericValues, categoricalCodes, classification));
+    }
+
+    @Override
+    public PredictionMap predict(double[] numericValues, int[] categoricalCodes) {
+        final PredictionMap predictionMap = wrappedClassifier.predict(numericValues, categoricalCodes);
+        final double positiveClassProb = pavFunction.predict(wrappedClassifier.getProbability(numericValues, categoricalCodes, 1.0));
+        predictionMap.put(Double.valueOf(1.0), positiveClassProb);
+        predictionMap.put(Double.valueOf(0.0), 1.0 - positiveClassProb);
+        return predictionMap;
+    }
+}
@@ -0,0 +1,81 @@
+package quickml.supervised.classifier.compiled;
+
+import com.google.common.base.Preconditions;
+import quickml.data.PredictionMap;
+import quickml.supervised.calibratedPredictiveModel.CalibratedClassifier;
+import quickml.supervised.classifier.Classifier;
+import quickml.supervised.classifier.decisionTree.Tree;
+import quickml.supervised.classifier.downsampling.DownsamplingClassifier;
+import quickml.supervised.classifier.randomForest.RandomForest;
+
+import java.io.Serializable;
+
+/**
+ * A classifier bound to a {@link FeatureSchema}, which predicts from the values of the schema's features in
+ * primitive arrays, or in a reusable {@link FeatureVector}, rather than from an attributes map.  Binding resolves
+ * the attribute of every branch to the index of its feature and every category set to the codes of its categories
+ * once, so a prediction neither allocates a map nor hashes any attribute names or categories.
+ */
+public abstract class BoundClassifier implements Serializable {
+    private static final long serialVersionUID = 2306812853271680129L;
+
+    protected final FeatureSchema schema;
+
+    protected BoundClassifier(FeatureSchema schema) {
+        this.schema = schema;
+    }
+
+    /**
+     * Binds a {@link Tree}, {@link RandomForest}, {@link CompiledForest} or {@link GeneratedForest}, or a
+     * {@link CalibratedClassifier} or {@link DownsamplingClassifier} that wraps one of them, to the schema, which
+     * must have every attribute the model tests, with the type the model tests it as.
+     */
+    public static BoundClassifier bind(Classifier classifier, FeatureSchema schema) {
+        if (classifier instanceof Tree) {
+            return new BoundForest(CompiledForest.compile((Tree) classifier), schema);
+        } else if (classifier instanceof RandomForest) {
+            return new BoundForest(CompiledForest.compile((RandomForest) classifier), schema);
+        } else if (classifier instanceof CompiledForest) {
+            return new BoundForest((CompiledForest) classifier, schema);
+        } else if (classifier instanceof GeneratedForest) {
+            return new BoundForest(((GeneratedForest) classifier).getCompiledForest(), schema);
+        } else if (classifier instanceof CalibratedClassifier) {
+            final CalibratedClassifier calibratedClassifier = (CalibratedClassifier) classifier;
+            return new BoundCalibratedClassifier(bind(calibratedClassifier.wrappedPredictiveModel, schema), calibratedClassifier.pavFunction);
+        } else if (classifier instanceof DownsamplingClassifier) {
+            final DownsamplingClassifier downsamplingClassifier = (DownsamplingClassifier) classifier;
+            return new BoundDownsamplingClassifier(bind(downsamplingClassifier.wrappedClassifier, schema), downsamplingClassifier);
+        }
+        throw new IllegalArgumentException("Can't bind a " + classifier.getClass().getSimpleName() + " to a feature schema");
+    }
+
+    public FeatureSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * @param numericValues    the values of the numeric features, indexed by feature
+     * @param categoricalCodes the codes of the categorical features, indexed by feature
+     */
+    public abstract double getProbability(double[] numericValues, int[] categoricalCodes, Serializable classification);
+
+    /**
+     * @param numericValues    the values of the numeric features, indexed by feature
+     * @param categoricalCodes the codes of the categorical features, indexed by feature
+     */
+    public abstract PredictionMap predict(double[] numericValues, int[] categoricalCodes);
+
+    public double getProbability(FeatureVector features, Serializable classification) {
+        checkSchema(features);
+        return getProbability(features.getNumericValues(), features.getCategoricalCodes(), classification);
+    }
+
+    public PredictionMap predict(FeatureVector features) {
+        checkSchema(features);
+        return predict(features.getNumericValues(), features.getCategoricalCodes());
+    }
+
+    private void checkSchema(FeatureVector features) {
+        Preconditions.checkArgument(features.getSchema() == schema, "The feature vector is of another schema");
+    }
+}
@@ -0,0 +1,48 @@
+package quickml.supervised.classifier.compiled;
+
+import com.google.common.collect.Maps;
+import quickml.data.PredictionMap;
+import quickml.supervised.classifier.downsampling.DownsamplingClassifier;
+import quickml.supervised.classifier.downsampling.Utils;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * A {@link DownsamplingClassifier} bound to a schema.
+ */
+final class BoundDownsamplingClassifier extends BoundClassifier {
+    private static final long serialVersionUID = -1460713946020367512L;
+
+    private final BoundClassifier wrappedClassifier;
+    private final Serializable minorityClassification;
+    private final Serializable majorityClassification;
+    private final double dropProbability;
+
+    BoundDownsamplingClassifier(BoundClassifier wrappedClassifier, DownsamplingClassifier downsamplingClassifier) {
+        super(wrappedClassifier.getSchema());
+        this.wrappedClassifier = wrappedClassifier;
+        this.minorityClassification = downsamplingClassifier.getMinorityClassification();
+        this.majorityClassification = downsamplingClassifier.getMajorityClassification();
+        this.dropProbability = downsamplingClassifier.getDropProbability();
+    }
+
+    @Override
+    public double getProbability(double[] numericValues, int[] categoricalCodes, Serializable classification) {
+        final double probabilityOfMinorityInstance = getProbabilityOfMinorityInstance(numericValues, categoricalCodes);
+        return classification.equals(minorityClassification) ? probabilityOfMinorityInstance : 1 - probabilityOfMinorityInstance;
+    }
+
+    @Override
+    public PredictionMap predict(double[] numericValues, int[] categoricalCodes) {
+        final double probabilityOfMinorityInstance = getProbabilityOfMinorityInstance(numericValues, categoricalCodes);
+        final Map<Serializable, Double> probsByClassification = Maps.newHashMap();
+        probsByClassification.put(minorityClassification, probabilityOfMinorityInstance);
+        probsByClassification.put(majorityClassification, 1 - probabilityOfMinorityInstance);
+        return new PredictionMap(probsByClassification);
+    }
+
+    private double getProbabilityOfMinorityInstance(double[] numericValues, int[] categoricalCodes) {
+        return Utils.correctProbability(dropProbability, wrappedClassifier.getProbability(numericValues, categoricalCodes, minorityClassification));
+    }
+}
@@ -0,0 +1,93 @@
+package quickml.supervised.classifier.compiled;
+
+import com.google.common.base.Preconditions;
+import quickml.data.PredictionMap;
+
+import java.io.Serializable;
+
+/**
+ * A {@link CompiledForest} bound to a schema, whose branches test features by their index in the schema, and whose
+ * category sets are flags indexed by the codes of the categories.
+ */
+final class BoundForest extends BoundClassifier {
+    private static final long serialVersionUID = -6927105534618231702L;
+
+    private final CompiledForest compiledForest;
+    private final int[] features;
+    /**
+     * The categories of each category set by code, shifted by one so that the missing code is at 0.
+     */
+    private final boolean[][] categorySets;
+
+    BoundForest(CompiledForest compiledForest, FeatureSchema schema) {
+        super(schema);
+        this.compiledForest = compiledForest;
+        final int[] schemaFeatures = new int[compiledForest.attributes.length];
+        for (int feature = 0; feature < schemaFeatures.length; feature++) {
+            schemaFeatures[feature] = schema.getFeature(compiledForest.attributes[feature]);
+            Preconditions.checkArgument(schemaFeatures[feature] >= 0, "The model tests %s, which isn't in the schema", compiledForest.attributes[feature]);
+        }
+        this.features = new int[compiledForest.features.length];
+        this.categorySets = new boolean[compiledForest.categorySets.length][];
+        for (int node = 0; node < features.length; node++) {
+            final int feature = compiledForest.features[node];
+            if (feature < 0) {
+                features[node] = feature;
+                continue;
+            }
+            final int schemaFeature = schemaFeatures[feature];
+            features[node] = schemaFeature;
+            final int categorySetId = compiledForest.categorySetIds[node];
+            final FeatureSchema.FeatureType type = categorySetId < 0 ? FeatureSchema.FeatureType.NUMERIC : FeatureSchema.FeatureType.CATEGORICAL;
+            Preconditions.checkArgument(schema.getType(schemaFeature) == type, "The model tests %s as %s, not as in the schema", compiledForest.attributes[feature], type);
+            if (categorySetId >= 0) {
+                final boolean[] categorySet = new boolean[schema.getOtherCode(schemaFeature) + 2];
+                for (int code = FeatureSchema.MISSING_CODE; code < schema.getOtherCode(schemaFeature); code++) {
+                    categorySet[code + 1] = compiledForest.categorySets[categorySetId].contains(schema.getCategory(schemaFeature, code));
+                }
+                categorySets[categorySetId] = categorySet;
+            }
+        }
+    }
+
+    @Override
+    public double getProbability(double[] numericValues, int[] categoricalCodes, Serializable classification) {
+        checkLengths(numericValues, categoricalCodes);
+        final int classificationIndex = compiledForest.classifications.indexOf(classification);
+        if (classificationIndex < 0) {
+            return 0;
+        }
+        final int numClassifications = compiledForest.classifications.size();
+        double total = 0;
+        for (int root : compiledForest.roots) {
+            total += compiledForest.leafProbabilities[getLeaf(root, numericValues, categoricalCodes) * numClassifications + classificationIndex];
+        }
+        return total / compiledForest.roots.length;
+    }
+
+    @Override
+    public PredictionMap predict(double[] numericValues, int[] categoricalCodes) {
+        checkLengths(numericValues, categoricalCodes);
+        final int[] leaves = new int[compiledForest.roots.length];
+        for (int tree = 0; tree < leaves.length; tree++) {
+            leaves[tree] = getLeaf(compiledForest.roots[tree], numericValues, categoricalCodes);
+        }
+        return compiledForest.toPredictionMap(compiledForest.getProbabilities(leaves));
+    }
+
+    private int getLeaf(int root, double[] numericValues, int[] categoricalCodes) {
+        final int[] categorySetIds = compiledForest.categorySetIds;
+        int node = root;
+        int feature;
+        while ((feature = features[node]) >= 0) {
+            final int categorySetId = categorySetIds[node];
+            final boolean decision = categorySetId < 0 ? numericValues[feature] > compiledForest.thresholds[node] : categorySets[categorySetId][categoricalCodes[feature] + 1];
+            node = decision ? compiledForest.trueChildren[node] : node + 1;
+        }
+        return ~feature;
+    }
+
+    private void checkLengths(double[] numericValues, int[] categoricalCodes) {
+        Preconditions.checkArgument(numericValues.length == schema.size() && categoricalCodes.length == schema.size(), "Expecting %s features", schema.size());
+    }
+}
@@ -0,0 +1,329 @@
+package quickml.supervised.classifier.compiled;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Doubles;
+import com.google.common.primitives.Ints;
+import quickml.data.AttributesMap;
+import quickml.data.ClassificationDictionary;
+import quickml.data.PredictionMap;
+import quickml.supervised.classifier.AbstractClassifier;
+import quickml.supervised.classifier.decisionTree.Tree;
+import quickml.supervised.classifier.decisionTree.tree.Branch;
+import quickml.supervised.classifier.decisionTree.tree.CategoricalBranch;
+import quickml.supervised.classifier.decisionTree.tree.Leaf;
+import quickml.supervised.classifier.decisionTree.tree.Node;
+import quickml.supervised.classifier.decisionTree.tree.NumericBranch;
+import quickml.supervised.classifier.randomForest.RandomForest;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A compiled, immutable form of a {@link Tree} or {@link RandomForest} that predicts the same probabilities.
+ * <p/>
+ * The nodes of all trees are laid out in preorder in parallel primitive arrays: the feature a branch tests, its
+ * threshold or the id of its category set, and the offset of its true child, while its false child is the node
+ * that follows it.  A leaf stores the complement of its id in place of a feature, and the probabilities of the
+ * leaves are kept in a single array, by leaf and then by classification.  Each attribute is looked up in the
+ * attributes map once per prediction, rather than once per branch of every tree, and the trees are then walked
+ * without any virtual calls, boxing or hashing of attribute names.
+ */
+public final class CompiledForest extends AbstractClassifier {
+    private static final long serialVersionUID = -2379486624081379125L;
+
+    final String[] attributes;
+    private final boolean[] numericAttributes;
+    final ClassificationDictionary classifications;
+    final int[] roots;
+    final int[] features;
+    final double[] thresholds;
+    final int[] categorySetIds;
+    final int[] trueChildren;
+    private final double[] probabilitiesOfTrueChild;
+    final Set<?>[] categorySets;
+    final double[] leafProbabilities;
+    /**
+     * Whether the probability of the second of two classifications is predicted as the complement of the first, as
+     * {@link RandomForest#predict} does.
+     */
+    private final boolean complementsSecondClassification;
+
+    private CompiledForest(Compiler compiler) {
+        this.attributes = compiler.attributes.toArray(new String[compiler.attributes.size()]);
+        this.numericAttributes = new boolean[this.attributes.length];
+        for (int feature : compiler.numericFeatures) {
+            numericAttributes[feature] = true;
+        }
+        this.classifications = compiler.classifications;
+        this.roots = Ints.toArray(compiler.roots);
+        this.features = Ints.toArray(compiler.features);
+        this.thresholds = Doubles.toArray(compiler.thresholds);
+        this.categorySetIds = Ints.toArray(compiler.categorySetIds);
+        this.trueChildren = Ints.toArray(compiler.trueChildren);
+        this.probabilitiesOfTrueChild = Doubles.toArray(compiler.probabilitiesOfTrueChild);
+        this.categorySets = compiler.categorySets.toArray(new Set<?>[compiler.categorySets.size()]);
+        this.leafProbabilities = Doubles.toArray(compiler.leafProbabilities);
+        this.complementsSecondClassification = compiler.complementsSecondClassification;
+    }
+
+    public static CompiledForest compile(Tree tree) {
+        final Compiler compiler = new Compiler(tree.getClassifications());
+        compiler.addTree(tree);
+        return new CompiledForest(compiler);
+    }
+
+    public static CompiledForest compile(RandomForest randomForest) {
+        final Compiler compiler = new Compiler(randomForest.getClassifications());
+        for (Tree tree : randomForest.trees) {
+            compiler.addTree(tree);
+        }
+        compiler.complementsSecondClassification = randomForest.getClassifications().size() == 2;
+        return new CompiledForest(compiler);
+    }
+
+    public int getNumTrees() {
+        return roots.length;
+    }
+
+    public int getNumNodes() {
+        return features.length;
+    }
+
+    @Override
+    public double getProbability(AttributesMap attributes, Serializable classification) {
+        return getProbability(findLeaves(attributes), classification);
+    }
+
+    /**
+     * @return the mean probability over the trees of every classification of the model, including those that
+     * none of the leaves reached has seen
+     */
+    @Override
+    public PredictionMap predict(AttributesMap attributes) {
+        return toPredictionMap(getProbabilities(findLeaves(attributes)));
+    }
+
+    @Override
+    public Serializable getClassificationByMaxProb(AttributesMap attributes) {
+        return getClassificationByMaxProb(getProbabilities(findLeaves(attributes)));
+    }
+
+    @Override
+    public PredictionMap predictWithoutAttributes(AttributesMap attributes, Set<String> attributesToIgnore) {
+        final double[] numericValues = new double[this.attributes.length];
+        final Object[] values = new Object[this.attributes.length];
+        lookUp(attributes, numericValues, values);
+        final boolean[] ignored = new boolean[this.attributes.length];
+        for (int feature = 0; feature < this.attributes.length; feature++) {
+            ignored[feature] = attributesToIgnore.contains(this.attributes[feature]);
+        }
+        final double[] probabilities = new double[classifications.size()];
+        for (int root : roots) {
+            addProbabilitiesWithoutAttributes(root, numericValues, values, ignored, 1.0 / roots.length, probabilities);
+        }
+        return toPredictionMap(probabilities);
+    }
+
+    private int[] findLeaves(AttributesMap attributes) {
+        final double[] numericValues = new double[this.attributes.length];
+        final Object[] values = new Object[this.attributes.length];
+        lookUp(attributes, numericValues, values);
+        final int[] leaves = new int[roots.length];
+        findLeaves(numericValues, values, leaves);
+        return leaves;
+    }
+
+    /**
+     * Walks the arrays of the trees as {@link LeafFinder#findLeaves} specifies.
+     */
+    void findLeaves(double[] numericValues, Object[] values, int[] leaves) {
+        for (int tree = 0; tree < roots.length; tree++) {
+            leaves[tree] = getLeaf(roots[tree], numericValues, values);
+        }
+    }
+
+    double getProbability(int[] leaves, Serializable classification) {
+        final int classificationIndex = classifications.indexOf(classification);
+        if (classificationIndex < 0) {
+            return 0;
+        }
+        double total = 0;
+        for (int leaf : leaves) {
+            total += leafProbabilities[leaf * classifications.size() + classificationIndex];
+        }
+        return total / leaves.length;
+    }
+
+    double[] getProbabilities(int[] leaves) {
+        final int numClassifications = classifications.size();
+        final double[] probabilities = new double[numClassifications];
+        for (int leaf : leaves) {
+            final int offset = leaf * numClassifications;
+            for (int classification = 0; classification < numClassifications; classification++) {
+                probabilities[classification] += leafProbabilities[offset + classification];
+            }
+        }
+        for (int classification = 0; classification < numClassifications; classification++) {
+            probabilities[classification] /= leaves.length;
+        }
+        if (complementsSecondClassification) {
+            probabilities[1] = 1.0 - probabilities[0];
+        }
+        return probabilities;
+    }
+
+    Serializable getClassificationByMaxProb(double[] probabilities) {
+        int best = 0;
+        for (int classification = 1; classification < probabilities.length; classification++) {
+            if (probabilities[classification] > probabilities[best]) {
+                best = classification;
+            }
+        }
+        return classifications.get(best);
+    }
+
+    PredictionMap toPredictionMap(double[] probabilities) {
+        final PredictionMap probsByClassification = PredictionMap.newMap(classifications);
+        for (int classification = 0; classification < probabilities.length; classification++) {
+            probsByClassification.setProbability(classification, probabilities[classification]);
+        }
+        return probsByClassification;
+    }
+
+    /**
+     * Looks up the value of every attribute the model tests, converting those that numeric branches test to doubles
+     * as {@link NumericBranch#decide} does.
+     */
+    void lookUp(AttributesMap attributes, double[] numericValues, Object[] values) {
+        for (int feature = 0; feature < this.attributes.length; feature++) {
+            final Serializable value = attributes.get(this.attributes[feature]);
+            values[feature] = value;
+            if (numericAttributes[feature] && value != null) {
+                if (!(value instanceof Number)) {
+                    throw new RuntimeException("Expecting a number as the value of " + this.attributes[feature] + " but got " + value + " of type " + value.getClass().getSimpleName());
+                }
+                numericValues[feature] = ((Number) value).doubleValue();
+            }
+        }
+    }
+
+    /**
+     * @return the id of the leaf that the tree whose root is at root assigns the values to
+     */
+    private int getLeaf(int root, double[] numericValues, Object[] values) {
+        int node = root;
+        int feature;
+        while ((feature = features[node]) >= 0) {
+            node = decide(node, feature, numericValues, values) ? trueChildren[node] : node + 1;
+        }
+        return ~feature;
+    }
+
+    private boolean decide(int node, int feature, double[] numericValues, Object[] values) {
+        final int categorySetId = categorySetIds[node];
+        return categorySetId < 0 ? numericValues[feature] > thresholds[node] : categorySets[categorySetId].contains(values[feature]);
+    }
+
+    private void addProbabilitiesWithoutAttributes(int node, double[] numericValues, Object[] values, boolean[] ignored, double weight, double[] probabilities) {
+        final int feature = features[node];
+        if (feature < 0) {
+            final int offset = ~feature * classifications.size();
+            for (int classification = 0; classification < classifications.size(); classification++) {
+                probabilities[classification] += weight * leafProbabilities[offset + classification];
+            }
+        } else if (ignored[feature]) {
+            final double probabilityOfTrueChild = probabilitiesOfTrueChild[node];
+            addProbabilitiesWithoutAttributes(trueChildren[node], numericValues, values, ignored, weight * probabilityOfTrueChild, probabilities);
+            addProbabilitiesWithoutAttributes(node + 1, numericValues, values, ignored, weight * (1 - probabilityOfTrueChild), probabilities);
+        } else {
+            addProbabilitiesWithoutAttributes(decide(node, feature, numericValues, values) ? trueChildren[node] : node + 1, numericValues, values, ignored, weight, probabilities);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledForest{" + "trees=" + roots.length +
+                ", nodes=" + features.length +
+                ", attributes=" + Arrays.toString(attributes) +
+                '}';
+    }
+
+    /**
+     * Lays out the nodes of trees in growable lists, from which the arrays of the forest are then copied.
+     */
+    private static class Compiler {
+        final List<String> attributes = Lists.newArrayList();
+        final Map<String, Integer> featuresByAttribute = Maps.newHashMap();
+        final Set<Integer> numericFeatures = new HashSet<>();
+        final List<Integer> roots = Lists.newArrayList();
+        final List<Integer> features = Lists.newArrayList();
+        final List<Double> thresholds = Lists.newArrayList();
+        final List<Integer> categorySetIds = Lists.newArrayList();
+        final List<Integer> trueChildren = Lists.newArrayList();
+        final List<Double> probabilitiesOfTrueChild = Lists.newArrayList();
+        final List<Set<?>> categorySets = Lists.newArrayList();
+        final List<Double> leafProbabilities = Lists.newArrayList();
+        final ClassificationDictionary classifications;
+        int numLeaves;
+        boolean complementsSecondClassification;
+
+        Compiler(Set<Serializable> classifications) {
+            Preconditions.checkArgument(!classifications.isEmpty(), "Can't compile a model without classifications");
+            this.classifications = new ClassificationDictionary(classifications);
+        }
+
+        void addTree(Tree tree) {
+            roots.add(features.size());
+            add(tree.node);
+        }
+
+        private void add(Node node) {
+            final int index = features.size();
+            features.add(0);
+            thresholds.add(0.0);
+            categorySetIds.add(-1);
+            trueChildren.add(-1);
+            probabilitiesOfTrueChild.add(0.0);
+            if (node instanceof Leaf) {
+                final Leaf leaf = (Leaf) node;
+                features.set(index, ~numLeaves++);
+                for (Serializable classification : classifications.getClassifications()) {
+                    leafProbabilities.add(leaf.getProbability(classification));
+                }
+                return;
+            }
+            final Branch branch = (Branch) node;
+            final int feature = getFeature(branch.attribute);
+            features.set(index, feature);
+            probabilitiesOfTrueChild.set(index, branch.getProbabilityOfTrueChild());
+            if (branch instanceof NumericBranch) {
+                numericFeatures.add(feature);
+                thresholds.set(index, ((NumericBranch) branch).threshold);
+            } else if (branch instanceof CategoricalBranch) {
+                categorySetIds.set(index, categorySets.size());
+                categorySets.add(new HashSet<>(((CategoricalBranch) branch).inSet));
+            } else {
+                throw new IllegalArgumentException("Can't compile a branch of type " + branch.getClass().getSimpleName());
+            }
+            add(branch.falseChild);
+            trueChildren.set(index, features.size());
+            add(branch.trueChild);
+        }
+
+        private int getFeature(String attribute) {
+            Integer feature = featuresByAttribute.get(attribute);
+            if (feature == null) {
+                feature = attributes.size();
+                attributes.add(attribute);
+                featuresByAttribute.put(attribute, feature);
+            }
+            return feature;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package quickml.supervised.classifier.compiled;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An ordered list of attributes, each numeric or categorical, that a model can be bound to with
+ * {@link BoundClassifier#bind} so that it predicts from primitive feature vectors rather than attributes maps.
+ * <p/>
+ * The value of a numeric feature is a double, and a missing one is 0, as {@link
+ * quickml.supervised.classifier.decisionTree.tree.NumericBranch} treats missing values.  The value of a categorical
+ * feature is the code of its category: the index of the category in the list the feature was declared with,
+ * {@link #MISSING_CODE} for a missing value, or {@link #getOtherCode} for any category not in the list, which a bound
+ * model treats as in none of its category sets.
+ */
+public final class FeatureSchema implements Serializable {
+    private static final long serialVersionUID = -4185937024771092716L;
+
+    public static final int MISSING_CODE = -1;
+
+    public enum FeatureType {
+        NUMERIC, CATEGORICAL
+    }
+
+    private final String[] attributes;
+    private final FeatureType[] types;
+    private final Map<String, Integer> features;
+    private final Serializable[][] categories;
+    private final List<Map<Serializable, Integer>> codes;
+
+    private FeatureSchema(Builder builder) {
+        this.attributes = builder.attributes.toArray(new String[builder.attributes.size()]);
+        this.types = builder.types.toArray(new FeatureType[builder.types.size()]);
+        this.features = builder.features;
+        this.categories = builder.categories.toArray(new Serializable[builder.categories.size()][]);
+        this.codes = Lists.newArrayListWithCapacity(attributes.length);
+        for (Serializable[] featureCategories : categories) {
+            Map<Serializable, Integer> featureCodes = null;
+            if (featureCategories != null) {
+                featureCodes = Maps.newHashMapWithExpectedSize(featureCategories.length);
+                for (int code = 0; code < featureCategories.length; code++) {
+                    featureCodes.put(featureCategories[code], code);
+                }
+            }
+            codes.add(featureCodes);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int size() {
+        return attributes.length;
+    }
+
+    public String getAttribute(int feature) {
+        return attributes[feature];
+    }
+
+    public FeatureType getType(int feature) {
+        return types[feature];
+    }
+
+    /**
+     * @return the index of the attribute's feature, or -1 if the schema doesn't have the attribute
+     */
+    public int getFeature(String attribute) {
+        final Integer feature = features.get(attribute);
+        return feature == null ? -1 : feature;
+    }
+
+    /**
+     * @return the code of the value of a categorical feature
+     */
+    public int getCode(int feature, Serializable value) {
+        Preconditions.checkArgument(types[feature] == FeatureType.CATEGORICAL, "%s isn't categorical", attributes[feature]);
+        if (value == null) {
+            return MISSING_CODE;
+        }
+        final Integer code = codes.get(feature).get(value);
+        return code == null ? getOtherCode(feature) : code;
+    }
+
+    /**
+     * @return the code of every category of a categorical feature that it wasn't declared with
+     */
+    public int getOtherCode(int feature) {
+        return categories[feature].length;
+    }
+
+    /**
+     * @return the category with the code, or null for the missing and other codes
+     */
+    public Serializable getCategory(int feature, int code) {
+        return code >= 0 && code < categories[feature].length ? categories[feature][code] : null;
+    }
+
+    public FeatureVector newFeatureVector() {
+        return new FeatureVector(this);
+    }
+
+    public static class Builder {
+        private final List<String> attributes = Lists.newArrayList();
+        private final List<FeatureType> types = Lists.newArrayList();
+        private final Map<String, Integer> features = Maps.newHashMap();
+        private final List<Serializable[]> categories = Lists.newArrayList();
+
+        public Builder numeric(String attribute) {
+            add(attribute, FeatureType.NUMERIC, null);
+            return this;
+        }
+
+        /**
+         * @param categories the categories of the attribute, whose codes are their indices in this list
+         */
+        public Builder categorical(String attribute, List<? extends Serializable> categories) {
+            add(attribute, FeatureType.CATEGORICAL, categories.toArray(new Serializable[categories.size()]));
+            return this;
+        }
+
+        public FeatureSchema build() {
+            return new FeatureSchema(this);
+        }
+
+        private void add(String attribute, FeatureType type, Serializable[] featureCategories) {
+            Preconditions.checkArgument(!features.containsKey(attribute), "%s is already in the schema", attribute);
+            features.put(attribute, attributes.size());
+            attributes.add(attribute);
+            types.add(type);
+            categories.add(featureCategories);
+        }
+    }
+}
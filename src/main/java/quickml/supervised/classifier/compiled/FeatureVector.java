@@ -0,0 +1,91 @@
+package quickml.supervised.classifier.compiled;
+
+import com.google.common.base.Preconditions;
+import quickml.data.AttributesMap;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A mutable buffer of the values of the features of a {@link FeatureSchema}, meant to be reused from one
+ * prediction to the next.  The values of numeric features are kept in a double[] and the codes of categorical
+ * features in an int[], both indexed by feature, and every feature starts out missing.
+ */
+public final class FeatureVector {
+    private final FeatureSchema schema;
+    private final double[] numericValues;
+    private final int[] categoricalCodes;
+
+    FeatureVector(FeatureSchema schema) {
+        this.schema = schema;
+        this.numericValues = new double[schema.size()];
+        this.categoricalCodes = new int[schema.size()];
+        clear();
+    }
+
+    public FeatureSchema getSchema() {
+        return schema;
+    }
+
+    public FeatureVector set(int feature, double value) {
+        Preconditions.checkArgument(schema.getType(feature) == FeatureSchema.FeatureType.NUMERIC, "%s isn't numeric", schema.getAttribute(feature));
+        numericValues[feature] = value;
+        return this;
+    }
+
+    public FeatureVector set(int feature, Serializable category) {
+        categoricalCodes[feature] = schema.getCode(feature, category);
+        return this;
+    }
+
+    public FeatureVector setCode(int feature, int code) {
+        Preconditions.checkArgument(schema.getType(feature) == FeatureSchema.FeatureType.CATEGORICAL, "%s isn't categorical", schema.getAttribute(feature));
+        Preconditions.checkArgument(code >= FeatureSchema.MISSING_CODE && code <= schema.getOtherCode(feature), "%s isn't a code of %s", code, schema.getAttribute(feature));
+        categoricalCodes[feature] = code;
+        return this;
+    }
+
+    /**
+     * Sets every feature of the schema to its attribute's value in attributes, or to missing if it has none.
+     */
+    public FeatureVector set(AttributesMap attributes) {
+        for (int feature = 0; feature < schema.size(); feature++) {
+            final Serializable value = attributes.get(schema.getAttribute(feature));
+            if (schema.getType(feature) == FeatureSchema.FeatureType.CATEGORICAL) {
+                categoricalCodes[feature] = schema.getCode(feature, value);
+            } else if (value == null) {
+                numericValues[feature] = 0;
+            } else {
+                Preconditions.checkArgument(value instanceof Number, "Expecting a number as the value of %s but got %s", schema.getAttribute(feature), value);
+                numericValues[feature] = ((Number) value).doubleValue();
+            }
+        }
+        return this;
+    }
+
+    public FeatureVector clear(int feature) {
+        numericValues[feature] = 0;
+        categoricalCodes[feature] = FeatureSchema.MISSING_CODE;
+        return this;
+    }
+
+    public FeatureVector clear() {
+        Arrays.fill(numericValues, 0);
+        Arrays.fill(categoricalCodes, FeatureSchema.MISSING_CODE);
+        return this;
+    }
+
+    /**
+     * @return the values of the numeric features, which writes to go straight into this vector
+     */
+    public double[] getNumericValues() {
+        return numericValues;
+    }
+
+    /**
+     * @return the codes of the categorical features, which writes to go straight into this vector
+     */
+    public int[] getCategoricalCodes() {
+        return categoricalCodes;
+    }
+}
@@ -0,0 +1,330 @@
+package quickml.supervised.classifier.compiled;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import quickml.data.AttributesMap;
+import quickml.data.PredictionMap;
+import quickml.supervised.classifier.AbstractClassifier;
+import quickml.supervised.classifier.Classifier;
+import quickml.supervised.classifier.decisionTree.Tree;
+import quickml.supervised.classifier.randomForest.RandomForest;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.URI;
+import java.security.CodeSource;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link CompiledForest} whose trees are turned into Java source, with every node an <code>if</code> statement
+ * over a pre-resolved attribute slot and every leaf a constant, and compiled at runtime with the JDK's compiler API.
+ * The JIT can then compile the trees like any other code, and there is no array traversal left on the hot path.
+ * It finds the same leaves, and so predicts the same probabilities, as walking the nodes of the trees.
+ * <p/>
+ * Compiling needs the JDK's compiler, which a JRE doesn't have, so {@link #generate(Tree)} and
+ * {@link #generate(RandomForest)} return the model they were given if the source can't be compiled.  A deserialized
+ * GeneratedForest compiles its source again, and walks the arrays of its CompiledForest if that fails.
+ */
+public final class GeneratedForest extends AbstractClassifier {
+    private static final Logger logger = LoggerFactory.getLogger(GeneratedForest.class);
+    private static final long serialVersionUID = 7391754102738165392L;
+
+    /**
+     * The number of branches written into one generated method before the rest of a subtree goes into methods of
+     * its own, which keeps methods well under the size beyond which HotSpot won't JIT compile them.
+     */
+    static final int MAX_BRANCHES_PER_METHOD = 128;
+    private static final int MAX_TREES_PER_METHOD = 512;
+    private static final String GENERATED_PACKAGE = "quickml.supervised.classifier.compiled.generated";
+    private static final AtomicInteger generatedClassCount = new AtomicInteger();
+
+    private final CompiledForest compiledForest;
+    private transient LeafFinder leafFinder;
+
+    private GeneratedForest(CompiledForest compiledForest, LeafFinder leafFinder) {
+        this.compiledForest = compiledForest;
+        this.leafFinder = leafFinder;
+    }
+
+    /**
+     * @return a GeneratedForest of the tree, or the tree itself if its source can't be compiled
+     */
+    public static Classifier generate(Tree tree) {
+        return generate(CompiledForest.compile(tree), tree, ToolProvider.getSystemJavaCompiler());
+    }
+
+    /**
+     * @return a GeneratedForest of the forest, or the forest itself if its source can't be compiled
+     */
+    public static Classifier generate(RandomForest randomForest) {
+        return generate(CompiledForest.compile(randomForest), randomForest, ToolProvider.getSystemJavaCompiler());
+    }
+
+    static Classifier generate(CompiledForest compiledForest, Classifier fallback, JavaCompiler compiler) {
+        try {
+            return new GeneratedForest(compiledForest, generateLeafFinder(compiledForest, compiler));
+        } catch (RuntimeException e) {
+            logger.warn("Couldn't compile the generated source of the model, falling back to interpreting it", e);
+            return fallback;
+        }
+    }
+
+    @Override
+    public double getProbability(AttributesMap attributes, Serializable classification) {
+        return compiledForest.getProbability(findLeaves(attributes), classification);
+    }
+
+    @Override
+    public PredictionMap predict(AttributesMap attributes) {
+        return compiledForest.toPredictionMap(compiledForest.getProbabilities(findLeaves(attributes)));
+    }
+
+    @Override
+    public Serializable getClassificationByMaxProb(AttributesMap attributes) {
+        return compiledForest.getClassificationByMaxProb(compiledForest.getProbabilities(findLeaves(attributes)));
+    }
+
+    @Override
+    public PredictionMap predictWithoutAttributes(AttributesMap attributes, Set<String> attributesToIgnore) {
+        return compiledForest.predictWithoutAttributes(attributes, attributesToIgnore);
+    }
+
+    CompiledForest getCompiledForest() {
+        return compiledForest;
+    }
+
+    private int[] findLeaves(AttributesMap attributes) {
+        final double[] numericValues = new double[compiledForest.attributes.length];
+        final Object[] values = new Object[compiledForest.attributes.length];
+        compiledForest.lookUp(attributes, numericValues, values);
+        final int[] leaves = new int[compiledForest.roots.length];
+        leafFinder.findLeaves(numericValues, values, leaves);
+        return leaves;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        try {
+            leafFinder = generateLeafFinder(compiledForest, ToolProvider.getSystemJavaCompiler());
+        } catch (RuntimeException e) {
+            logger.warn("Couldn't compile the generated source of the model, falling back to walking its arrays", e);
+            leafFinder = new ArrayLeafFinder(compiledForest);
+        }
+    }
+
+    private static LeafFinder generateLeafFinder(CompiledForest compiledForest, JavaCompiler compiler) {
+        if (compiler == null) {
+            throw new IllegalStateException("No Java compiler is available, as when running on a JRE");
+        }
+        final String simpleName = "GeneratedLeafFinder" + generatedClassCount.incrementAndGet();
+        final String className = GENERATED_PACKAGE + "." + simpleName;
+        final String source = new SourceWriter(compiledForest).write(simpleName);
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        final ClassFileManager fileManager = new ClassFileManager(compiler.getStandardFileManager(diagnostics, null, null));
+        final List<String> options = Arrays.asList("-classpath", getClassPath(), "-g:none", "-proc:none");
+        final JavaFileObject sourceFile = new SourceFile(className, source);
+        final boolean compiled = compiler.getTask(null, fileManager, diagnostics, options, null, Collections.singletonList(sourceFile)).call();
+        if (!compiled || fileManager.classFile == null) {
+            throw new IllegalStateException("Couldn't compile " + className + ": " + diagnostics.getDiagnostics());
+        }
+        try {
+            final Class<?> leafFinderClass = new GeneratedClassLoader(LeafFinder.class.getClassLoader()).define(className, fileManager.classFile.toByteArray());
+            return (LeafFinder) leafFinderClass.getConstructor(Set[].class).newInstance((Object) compiledForest.categorySets);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Couldn't instantiate " + className, e);
+        }
+    }
+
+    /**
+     * @return the location that the generated class can see {@link LeafFinder} at when it is compiled
+     */
+    private static String getClassPath() {
+        final CodeSource codeSource = LeafFinder.class.getProtectionDomain().getCodeSource();
+        if (codeSource == null) {
+            throw new IllegalStateException("Can't find where " + LeafFinder.class.getName() + " was loaded from");
+        }
+        try {
+            return new File(codeSource.getLocation().toURI()).getPath();
+        } catch (Exception e) {
+            throw new IllegalStateException("Can't find where " + LeafFinder.class.getName() + " was loaded from", e);
+        }
+    }
+
+    /**
+     * Writes the source of a class that implements {@link LeafFinder} with a method per tree, or per subtree of a
+     * large tree, of nested <code>if</code> statements that return leaf ids.
+     */
+    static class SourceWriter {
+        private final CompiledForest compiledForest;
+        private final StringBuilder source = new StringBuilder();
+        private final Deque<Integer> subtreesToWrite = new ArrayDeque<>();
+        private int branchesInMethod;
+
+        SourceWriter(CompiledForest compiledForest) {
+            this.compiledForest = compiledForest;
+        }
+
+        String write(String simpleName) {
+            final int numTrees = compiledForest.roots.length;
+            source.append("package ").append(GENERATED_PACKAGE).append(";\n\n");
+            source.append("public final class ").append(simpleName).append(" implements ").append(LeafFinder.class.getName()).append(" {\n");
+            source.append("    private final java.util.Set<?>[] categorySets;\n\n");
+            source.append("    public ").append(simpleName).append("(java.util.Set<?>[] categorySets) {\n");
+            source.append("        this.categorySets = categorySets;\n");
+            source.append("    }\n\n");
+            source.append("    public void findLeaves(double[] n, Object[] v, int[] leaves) {\n");
+            for (int firstTree = 0; firstTree < numTrees; firstTree += MAX_TREES_PER_METHOD) {
+                source.append("        findLeaves").append(firstTree).append("(n, v, leaves);\n");
+            }
+            source.append("    }\n");
+            for (int firstTree = 0; firstTree < numTrees; firstTree += MAX_TREES_PER_METHOD) {
+                source.append("\n    private void findLeaves").append(firstTree).append("(double[] n, Object[] v, int[] leaves) {\n");
+                for (int tree = firstTree; tree < Math.min(numTrees, firstTree + MAX_TREES_PER_METHOD); tree++) {
+                    source.append("        leaves[").append(tree).append("] = node").append(compiledForest.roots[tree]).append("(n, v);\n");
+                }
+                source.append("    }\n");
+            }
+            for (int root : compiledForest.roots) {
+                subtreesToWrite.add(root);
+            }
+            while (!subtreesToWrite.isEmpty()) {
+                writeMethod(subtreesToWrite.poll());
+            }
+            source.append("}\n");
+            return source.toString();
+        }
+
+        private void writeMethod(int node) {
+            source.append("\n    private int node").append(node).append("(double[] n, Object[] v) {\n");
+            branchesInMethod = 0;
+            writeNode(node, 2);
+            source.append("    }\n");
+        }
+
+        /**
+         * Writes statements that return the leaf of the subtree under node, as the nodes of a compiled forest are
+         * laid out in preorder with the false child of a branch after it.
+         */
+        private void writeNode(int node, int indent) {
+            final int feature = compiledForest.features[node];
+            if (feature < 0) {
+                indent(indent).append("return ").append(~feature).append(";\n");
+                return;
+            }
+            if (branchesInMethod == MAX_BRANCHES_PER_METHOD) {
+                indent(indent).append("return node").append(node).append("(n, v);\n");
+                subtreesToWrite.add(node);
+                return;
+            }
+            branchesInMethod++;
+            final int categorySetId = compiledForest.categorySetIds[node];
+            indent(indent).append("if (");
+            if (categorySetId < 0) {
+                source.append("n[").append(feature).append("] > ").append(toLiteral(compiledForest.thresholds[node]));
+            } else {
+                source.append("categorySets[").append(categorySetId).append("].contains(v[").append(feature).append("])");
+            }
+            source.append(") {\n");
+            writeNode(compiledForest.trueChildren[node], indent + 1);
+            indent(indent).append("}\n");
+            writeNode(node + 1, indent);
+        }
+
+        private StringBuilder indent(int indent) {
+            for (int x = 0; x < indent; x++) {
+                source.append("    ");
+            }
+            return source;
+        }
+
+        /**
+         * @return a literal for exactly the value, so that the generated comparisons decide as the thresholds do
+         */
+        private static String toLiteral(double value) {
+            if (Double.isNaN(value)) {
+                return "Double.NaN";
+            } else if (Double.isInfinite(value)) {
+                return value > 0 ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY";
+            }
+            return Double.toHexString(value);
+        }
+    }
+
+    private static class SourceFile extends SimpleJavaFileObject {
+        private final String source;
+
+        SourceFile(String className, String source) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.source = source;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return source;
+        }
+    }
+
+    /**
+     * Keeps the class file that the compiler writes in memory.
+     */
+    private static class ClassFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        ByteArrayOutputStream classFile;
+
+        ClassFileManager(StandardJavaFileManager fileManager) {
+            super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+            return new SimpleJavaFileObject(URI.create("bytes:///" + className.replace('.', '/') + kind.extension), kind) {
+                @Override
+                public OutputStream openOutputStream() {
+                    classFile = new ByteArrayOutputStream();
+                    return classFile;
+                }
+            };
+        }
+    }
+
+    private static class GeneratedClassLoader extends ClassLoader {
+
+        GeneratedClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String className, byte[] classFile) {
+            return defineClass(className, classFile, 0, classFile.length);
+        }
+    }
+
+    private static class ArrayLeafFinder implements LeafFinder {
+        private final CompiledForest compiledForest;
+
+        ArrayLeafFinder(CompiledForest compiledForest) {
+            this.compiledForest = compiledForest;
+        }
+
+        @Override
+        public void findLeaves(double[] numericValues, Object[] values, int[] leaves) {
+            compiledForest.findLeaves(numericValues, values, leaves);
+        }
+    }
+}
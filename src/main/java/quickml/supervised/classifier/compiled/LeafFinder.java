@@ -0,0 +1,15 @@
+package quickml.supervised.classifier.compiled;
+
+/**
+ * Finds the leaves that the trees of a {@link CompiledForest} assign an instance to.  It is public only so that the
+ * classes that {@link GeneratedForest} generates, which are loaded by a class loader of their own, can implement it.
+ */
+public interface LeafFinder {
+
+    /**
+     * @param numericValues the values of the forest's attributes, converted to doubles where numeric branches test them
+     * @param values        the values of the forest's attributes as they are in the attributes map
+     * @param leaves        where the id of the leaf that each tree assigns the instance to is written
+     */
+    void findLeaves(double[] numericValues, Object[] values, int[] leaves);
+}
@@ -0,0 +1,5 @@
+/**
+ * Immutable inference forms of trained trees and forests, which trade the flexibility of the node objects for
+ * faster predictions.
+ */
+package quickml.supervised.classifier.compiled;
@@ -0,0 +1,20 @@
+package quickml.supervised.classifier.decisionTree;
+
+/**
+ * A {@link Scorer} that can also score a split from arrays of counts indexed by label ordinal, which lets tree
+ * builders score candidate splits without creating a {@link quickml.supervised.classifier.decisionTree.tree.ClassificationCounter}
+ * per split.  Implementations of this method must not allocate, as it's called for every candidate split.
+ */
+public interface PrimitiveScorer extends Scorer {
+    /**
+     * Assess the quality of a separation of data
+     *
+     * @param aCounts the weight of each label in split a, indexed by label ordinal
+     * @param aTotal  the sum of aCounts
+     * @param bCounts the weight of each label in split b, indexed the same way as aCounts
+     * @param bTotal  the sum of bCounts
+     * @return A score, where a higher value indicates a better split. A value
+     *         of 0 being the lowest, and indicating no value.
+     */
+    public double scoreSplit(double[] aCounts, double aTotal, double[] bCounts, double bTotal);
+}
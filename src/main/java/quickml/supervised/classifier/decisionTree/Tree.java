@@ -1,7 +1,9 @@
 package quickml.supervised.classifier.decisionTree;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
 import quickml.data.AttributesMap;
+import quickml.data.ClassificationDictionary;
 import quickml.data.PredictionMap;
 import quickml.supervised.classifier.AbstractClassifier;
 import quickml.supervised.classifier.decisionTree.tree.Leaf;
@@ -23,8 +25,9 @@ public class Tree extends AbstractClassifier {
     static final long serialVersionUID = 56394564395635672L;
     public final Node node;
     private Set<Serializable> classifications = new HashSet<>();
+    private transient volatile ClassificationDictionary classificationDictionary;
 
-    protected Tree(Node tree, Set<Serializable> classifications) {
+    public Tree(Node tree, Set<Serializable> classifications) {
         this.node = tree;
         this.classifications = classifications;
     }
@@ -33,6 +36,31 @@ public class Tree extends AbstractClassifier {
         return classifications;
     }
 
+    /**
+     * @return a numbering of the classifications, which the prediction maps of this tree are backed by
+     */
+    public ClassificationDictionary getClassificationDictionary() {
+        ClassificationDictionary dictionary = classificationDictionary;
+        if (dictionary == null) {
+            dictionary = new ClassificationDictionary(classifications);
+            classificationDictionary = dictionary;
+        }
+        return dictionary;
+    }
+
+    /**
+     * Backs the prediction maps of this tree by dictionary rather than its own, so that its leaves cache their
+     * probabilities by a dictionary that other models, such as the forest it's in, share.
+     *
+     * @param dictionary a dictionary with all of the classifications of this tree, and maybe others
+     */
+    public void setClassificationDictionary(ClassificationDictionary dictionary) {
+        for (Serializable classification : classifications) {
+            Preconditions.checkArgument(dictionary.indexOf(classification) >= 0, "%s isn't in the classification dictionary", classification);
+        }
+        classificationDictionary = dictionary;
+    }
+
     @Override
     public double getProbability(AttributesMap attributes, Serializable classification) {
         Leaf leaf = node.getLeaf(attributes);
@@ -47,12 +75,9 @@ public class Tree extends AbstractClassifier {
 
     @Override
     public PredictionMap predict(AttributesMap attributes) {
-        Leaf leaf = node.getLeaf(attributes);
-        Map<Serializable, Double> probsByClassification = Maps.newHashMap();
-        for (Serializable classification : leaf.getClassifications()) {
-            probsByClassification.put(classification, leaf.getProbability(classification));
-        }
-        return new PredictionMap(probsByClassification);
+        PredictionMap probsByClassification = PredictionMap.newMap(getClassificationDictionary());
+        node.getLeaf(attributes).addProbabilities(probsByClassification);
+        return probsByClassification;
     }
 
     @Override
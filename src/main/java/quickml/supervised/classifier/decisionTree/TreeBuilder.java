@@ -1,26 +1,26 @@
 package quickml.supervised.classifier.decisionTree;
 
 import com.google.common.base.Preconditions;
-import com.google.common.base.Predicate;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
-import com.twitter.common.stats.ReservoirSampler;
-import com.twitter.common.util.Random;
-import org.apache.commons.lang.mutable.MutableInt;
 import org.javatuples.Pair;
 import quickml.collections.MapUtils;
 import quickml.data.ClassifierInstance;
+import quickml.data.ColumnarTrainingData;
 import quickml.supervised.PredictiveModelBuilder;
 import quickml.supervised.classifier.decisionTree.scorers.MSEScorer;
 import quickml.supervised.classifier.decisionTree.tree.*;
 import quickml.supervised.classifier.decisionTree.tree.attributeIgnoringStrategies.AttributeIgnoringStrategy;
 import quickml.supervised.classifier.decisionTree.tree.attributeIgnoringStrategies.IgnoreAttributesWithConstantProbability;
-import javax.annotation.Nullable;
+import quickml.supervised.classifier.decisionTree.tree.attributeIgnoringStrategies.RandomFeatureSubspace;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
 import java.util.*;
-import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public final class TreeBuilder<T extends ClassifierInstance> implements PredictiveModelBuilder<Tree, T> {
 
@@ -42,14 +42,54 @@ public final class TreeBuilder<T extends ClassifierInstance> implements Predicti
 
     public static final String ORDINAL_TEST_SPLITS = "ordinalTestSpilts";
 
+    public static final String HISTOGRAM_BINS = "histogramBins";
+
+    public static final String ATTRIBUTE_PARALLELISM = "attributeParallelism";
+
+    public static final String SUBTREE_PARALLELISM = "subtreeParallelism";
+
+    public static final String ONE_VS_REST_CATEGORICAL_SPLITS = "oneVsRestCategoricalSplits";
+
+    public static final String LEVEL_WISE = "levelWise";
+
+    public static final String EXTRA_TREES = "extraTrees";
+
+    public static final String SPLIT_SEARCH_SAMPLE_SIZE = "splitSearchSampleSize";
+
     public static final int SMALL_TRAINING_SET_LIMIT = 9;
 
-    public static final int RESERVOIR_SIZE = 1000;
+    /**
+     * The capacity of each level of the quantile sketches that numeric split thresholds are taken from.
+     */
+    public static final int QUANTILE_SKETCH_CAPACITY = 1000;
 
     public static final Serializable MISSING_VALUE = "%missingVALUE%83257";
 
     private static final int HARD_MINIMUM_INSTANCES_PER_CATEGORICAL_VALUE = 10;
 
+    /**
+     * Nodes with fewer instances than this evaluate their attributes on the building thread, as they're too
+     * small for forking to pay off.
+     */
+    private static final int MIN_INSTANCES_TO_EVALUATE_ATTRIBUTES_IN_PARALLEL = 1000;
+
+    /**
+     * The children of a branch are built concurrently only if both of them have at least this many instances.
+     */
+    private static final int MIN_INSTANCES_TO_BUILD_SUBTREES_IN_PARALLEL = 1000;
+
+    /**
+     * The statistics (quantile sketches, histograms and class counts) of larger nodes are accumulated in shards of
+     * at most this many rows, which can be accumulated concurrently and then merged.
+     */
+    private static final int ROWS_PER_SHARD = 1 << 16;
+
+    /**
+     * Accumulates the shards of builders without a fork-join pool of their own, created when first needed.  Its
+     * threads are daemons, so it's never shut down.
+     */
+    private static ForkJoinPool shardPool;
+
     private Scorer scorer;
 
     private int maxDepth = 5;
@@ -60,14 +100,26 @@ public final class TreeBuilder<T extends ClassifierInstance> implements Predicti
 
     private int minLeafInstances = 0;
 
-    private Random rand = Random.Util.fromSystemRandom(MapUtils.random);
-
     private boolean penalizeCategoricalSplitsBySplitAttributeInformationValue = true;
 
     private double degreeOfGainRatioPenalty = 1.0;
 
     private int ordinalTestSpilts = 5;
 
+    private int histogramBins = 0;
+
+    private int attributeParallelism = 1;
+
+    private int subtreeParallelism = 1;
+
+    private boolean oneVsRestCategoricalSplits = false;
+
+    private boolean levelWise = false;
+
+    private boolean extraTrees = false;
+
+    private int splitSearchSampleSize = 0;
+
     private boolean applyCrossValidationToNodeConstruction = false;
 
     private double fractionOfDataToUseInHoldOutSet;
@@ -79,10 +131,27 @@ public final class TreeBuilder<T extends ClassifierInstance> implements Predicti
 
     private Serializable majorityClassification;
 
+    private int minorityLabel;
+
+    private int majorityLabel;
+
     private double majorityToMinorityRatio = 1;
 
     private boolean binaryClassifications = true;
 
+    private ColumnarTrainingData trainingData;
+
+    private NumericBins numericBins;
+
+    private ForkJoinPool forkJoinPool;
+
+    /**
+     * The ids of the attributes the tree being built may split on, in ascending order: a subspace sampled for the
+     * tree if the attribute ignoring strategy is a {@link RandomFeatureSubspace} with tree scope, otherwise all of
+     * them.  Splits and histograms are only created for these.
+     */
+    private int[] treeAttributes;
+
     public TreeBuilder() {
         this(new MSEScorer(MSEScorer.CrossValidationCorrection.FALSE));
     }
@@ -102,6 +171,13 @@ public final class TreeBuilder<T extends ClassifierInstance> implements Predicti
         copy.penalizeCategoricalSplitsBySplitAttributeInformationValue = penalizeCategoricalSplitsBySplitAttributeInformationValue;
         copy.degreeOfGainRatioPenalty = degreeOfGainRatioPenalty;
         copy.ordinalTestSpilts = ordinalTestSpilts;
+        copy.histogramBins = histogramBins;
+        copy.attributeParallelism = attributeParallelism;
+        copy.subtreeParallelism = subtreeParallelism;
+        copy.oneVsRestCategoricalSplits = oneVsRestCategoricalSplits;
+        copy.levelWise = levelWise;
+        copy.extraTrees = extraTrees;
+        copy.splitSearchSampleSize = splitSearchSampleSize;
         copy.applyCrossValidationToNodeConstruction = applyCrossValidationToNodeConstruction;
         copy.attributeIgnoringStrategy = attributeIgnoringStrategy.copy();
         copy.fractionOfDataToUseInHoldOutSet = fractionOfDataToUseInHoldOutSet;
@@ -131,6 +207,27 @@ public final class TreeBuilder<T extends ClassifierInstance> implements Predicti
         if (cfg.containsKey(ORDINAL_TEST_SPLITS)) {
             ordinalTestSplits((Integer) cfg.get(ORDINAL_TEST_SPLITS));
         }
+        if (cfg.containsKey(HISTOGRAM_BINS)) {
+            histogramBins((Integer) cfg.get(HISTOGRAM_BINS));
+        }
+        if (cfg.containsKey(ATTRIBUTE_PARALLELISM)) {
+            attributeParallelism((Integer) cfg.get(ATTRIBUTE_PARALLELISM));
+        }
+        if (cfg.containsKey(SUBTREE_PARALLELISM)) {
+            subtreeParallelism((Integer) cfg.get(SUBTREE_PARALLELISM));
+        }
+        if (cfg.containsKey(ONE_VS_REST_CATEGORICAL_SPLITS)) {
+            oneVsRestCategoricalSplits((Boolean) cfg.get(ONE_VS_REST_CATEGORICAL_SPLITS));
+        }
+        if (cfg.containsKey(LEVEL_WISE)) {
+            levelWise((Boolean) cfg.get(LEVEL_WISE));
+        }
+        if (cfg.containsKey(EXTRA_TREES)) {
+            extraTrees((Boolean) cfg.get(EXTRA_TREES));
+        }
+        if (cfg.containsKey(SPLIT_SEARCH_SAMPLE_SIZE)) {
+            splitSearchSampleSize((Integer) cfg.get(SPLIT_SEARCH_SAMPLE_SIZE));
+        }
         if (cfg.containsKey(DEGREE_OF_GAIN_RATIO_PENALTY)) {
             degreeOfGainRatioPenalty((Double) cfg.get(DEGREE_OF_GAIN_RATIO_PENALTY));
         }
@@ -150,6 +247,104 @@ public final class TreeBuilder<T extends ClassifierInstance> implements Predicti
         return this;
     }
 
+    /**
+     * Find numeric splits from histograms over at most histogramBins bins per numeric attribute, computed once
+     * before training, rather than from thresholds resampled at every node.  Only the smaller child of a split has
+     * its histograms computed from its instances, those of the larger child are what remains of its parent's.
+     *
+     * @param histogramBins the maximum number of bins per numeric attribute (up to {@link NumericBins#MAX_BINS}),
+     *                      or 0 to disable histograms
+     */
+    public TreeBuilder<T> histogramBins(int histogramBins) {
+        Preconditions.checkArgument(histogramBins == 0 || (histogramBins > 1 && histogramBins <= NumericBins.MAX_BINS), "histogramBins must be 0 or between 2 and %s", NumericBins.MAX_BINS);
+        this.histogramBins = histogramBins;
+        return this;
+    }
+
+    /**
+     * Evaluate the candidate attributes of large nodes concurrently on a fork-join pool of this many threads.
+     * Attributes are still chosen to be ignored, and equally good splits are still resolved, in attribute order,
+     * so the tree built doesn't depend on the parallelism.  The statistics of nodes with too many rows for a single
+     * thread, such as the root, are accumulated in shards concurrently whatever this is, on this pool if there is
+     * one.  The scorer must be thread safe if this is above 1.
+     *
+     * @param attributeParallelism the number of threads to evaluate attributes on, 1 to evaluate them on the
+     *                             building thread
+     */
+    public TreeBuilder<T> attributeParallelism(int attributeParallelism) {
+        Preconditions.checkArgument(attributeParallelism > 0, "attributeParallelism must be positive");
+        this.attributeParallelism = attributeParallelism;
+        return this;
+    }
+
+    /**
+     * Build the two subtrees below a split concurrently, on a fork-join pool of this many threads, when both of
+     * them have enough instances to make it worthwhile.  Each subtree then works on its own copy of the candidate
+     * numeric splits.  The scorer and attribute ignoring strategy must be thread safe if this is above 1.
+     *
+     * @param subtreeParallelism the number of threads to build subtrees on, 1 to build the whole tree on the
+     *                           building thread
+     */
+    public TreeBuilder<T> subtreeParallelism(int subtreeParallelism) {
+        Preconditions.checkArgument(subtreeParallelism > 0, "subtreeParallelism must be positive");
+        this.subtreeParallelism = subtreeParallelism;
+        return this;
+    }
+
+    /**
+     * Find the categorical splits of data with more than two classifications with a one-vs-rest sweep rather than
+     * by growing the inset greedily.  For each classification, the attribute's values are ordered by how likely
+     * they are to have it, and every prefix of that order is scored as an inset, which takes O(classifications *
+     * values * log(values)) time per attribute rather than the O(values^2) of the greedy search, so attributes
+     * with thousands of values become practical.  Two-class data is unaffected, as its categorical splits are
+     * already found with a single sweep.
+     */
+    public TreeBuilder<T> oneVsRestCategoricalSplits(boolean oneVsRestCategoricalSplits) {
+        this.oneVsRestCategoricalSplits = oneVsRestCategoricalSplits;
+        return this;
+    }
+
+    /**
+     * Grow the tree a level at a time rather than depth first.  All the nodes at a depth are split together, after
+     * a single pass over each column that routes every row to its node and accumulates the histograms of all of
+     * them, so training takes maxDepth sequential scans of the data.  Only the smaller child of each split is
+     * scanned, the histograms of the larger one being what remains of its parent's.  Requires histograms (see
+     * {@link #histogramBins}), which cover categorical attributes too when growing level-wise.  If subtreeParallelism
+     * is above 1, the nodes of a level are split concurrently.
+     */
+    public TreeBuilder<T> levelWise(boolean levelWise) {
+        this.levelWise = levelWise;
+        return this;
+    }
+
+    /**
+     * Grow extremely randomized trees: rather than searching for the best split of each attribute, score a single
+     * random one, split at a threshold drawn between the node's lowest and highest values of a numeric attribute
+     * (or between bin bounds if using histograms), or on a random subset of the values of a categorical attribute.
+     * No candidate thresholds are sampled, so each attribute takes one pass over the node's instances (plus one to
+     * find the range of a numeric attribute's values).  The random draws are taken from {@link MapUtils#random}, so
+     * seeding it makes a build reproducible, as long as attributes and subtrees aren't built in parallel, which
+     * would make the order of the draws vary.
+     */
+    public TreeBuilder<T> extraTrees(boolean extraTrees) {
+        this.extraTrees = extraTrees;
+        return this;
+    }
+
+    /**
+     * Search for the splits of nodes of two-class data with more than splitSearchSampleSize rows on a stratified
+     * sample of about that many of them, which keeps every row of the minority class and as many of the majority
+     * class as fit, the majority counts being scaled up to make up for those left out.  The split found is then
+     * applied to all of the node's rows.  Only applies when not using histograms, which are already cheap to search.
+     *
+     * @param splitSearchSampleSize the number of rows above which nodes are sampled, or 0 to never sample them
+     */
+    public TreeBuilder<T> splitSearchSampleSize(int splitSearchSampleSize) {
+        Preconditions.checkArgument(splitSearchSampleSize >= 0, "splitSearchSampleSize must not be negative");
+        this.splitSearchSampleSize = splitSearchSampleSize;
+        return this;
+    }
+
     public TreeBuilder<T> scorer(final Scorer scorer) {
         this.scorer = scorer;
         return this;
@@ -187,45 +382,103 @@ public final class TreeBuilder<T extends ClassifierInstance> implements Predicti
 
     @Override
     public Tree buildPredictiveModel(Iterable<T> trainingData) {
-        Set<Serializable> classifications = getClassificationProperties(trainingData);
-        return new Tree(buildTree(null, trainingData, 0, createNumericSplits(trainingData)), classifications);
-    }
-
-    private Set<Serializable> getClassificationProperties(Iterable<T> trainingData) {
-        HashMap<Serializable, MutableInt> classificationsAndCounts = Maps.newHashMap();
-        Serializable minorityClassification = null;
-        Serializable majorityClassification = null;
-        boolean binaryClassifications = true;
-        double majorityToMinorityRatio = 1;
-        for (T instance : trainingData) {
-            Serializable classification = instance.getLabel();
-            if (classificationsAndCounts.containsKey(classification)) {
-                classificationsAndCounts.get(classification).increment();
-            } else {
-                classificationsAndCounts.put(classification, new MutableInt(1));
+        return buildPredictiveModel(ColumnarTrainingData.create(trainingData));
+    }
+
+    /**
+     * Builds a tree directly from columnar training data, which lets the data be encoded once and shared
+     * between several builds (eg. the trees of a random forest).
+     */
+    public Tree buildPredictiveModel(ColumnarTrainingData trainingData) {
+        return buildPredictiveModel(trainingData, createNumericBins(trainingData));
+    }
+
+    /**
+     * @return the bins that this builder would put the numeric attributes of trainingData in, or null if it doesn't
+     * use histograms
+     */
+    public NumericBins createNumericBins(ColumnarTrainingData trainingData) {
+        return histogramBins > 0 ? NumericBins.create(trainingData, histogramBins) : null;
+    }
+
+    /**
+     * Builds a tree from columnar training data whose numeric attributes have already been binned by
+     * {@link #createNumericBins}, so that several builds can share the bins.
+     */
+    public Tree buildPredictiveModel(ColumnarTrainingData trainingData, NumericBins numericBins) {
+        Preconditions.checkArgument((histogramBins > 0) == (numericBins != null), "numericBins must be given if and only if histograms are used");
+        Preconditions.checkState(!levelWise || histogramBins > 0, "growing trees level-wise requires histogramBins");
+        Preconditions.checkState(levelWise || trainingData.isInMemory(), "memory-mapped training data can only be grown level-wise");
+        this.trainingData = trainingData;
+        this.numericBins = numericBins;
+        this.forkJoinPool = attributeParallelism > 1 || subtreeParallelism > 1 ? new ForkJoinPool(Math.max(attributeParallelism, subtreeParallelism)) : null;
+        try {
+            this.treeAttributes = getTreeAttributes();
+            Set<Serializable> classifications = getClassificationProperties();
+            if (levelWise) {
+                return new Tree(buildRoot(null), classifications);
+            }
+            // partitioned in place as the tree is built, each node owning a range of it
+            return new Tree(buildRoot(getAllRows()), classifications);
+        } finally {
+            if (forkJoinPool != null) {
+                forkJoinPool.shutdown();
+                forkJoinPool = null;
             }
+            this.trainingData = null;
+            this.numericBins = null;
+            this.treeAttributes = null;
         }
-        if (classificationsAndCounts.size() > 2) {
+    }
+
+    private int[] getTreeAttributes() {
+        if (attributeIgnoringStrategy instanceof RandomFeatureSubspace && ((RandomFeatureSubspace) attributeIgnoringStrategy).getScope() == RandomFeatureSubspace.Scope.TREE) {
+            return ((RandomFeatureSubspace) attributeIgnoringStrategy).sampleSubspace(trainingData.getNumAttributes());
+        }
+        final int[] attributes = new int[trainingData.getNumAttributes()];
+        for (int attribute = 0; attribute < attributes.length; attribute++) {
+            attributes[attribute] = attribute;
+        }
+        return attributes;
+    }
+
+    private int[] getAllRows() {
+        final int[] rows = new int[trainingData.size()];
+        for (int row = 0; row < rows.length; row++) {
+            rows[row] = row;
+        }
+        return rows;
+    }
+
+    private Set<Serializable> getClassificationProperties() {
+        final double[] countsByLabel = new double[trainingData.getNumLabels()];
+        final IntBuffer labels = trainingData.getLabelBuffer();
+        for (int row = 0; row < trainingData.size(); row++) {
+            countsByLabel[labels.get(row)]++;
+        }
+        final Set<Serializable> classifications = new HashSet<>();
+        for (int label = 0; label < countsByLabel.length; label++) {
+            classifications.add(trainingData.getLabelValue(label));
+        }
+        if (countsByLabel.length > 2) {
             setBinaryClassifications(false);
-            return new HashSet<>(classificationsAndCounts.keySet());
+            return classifications;
         }
-        minorityClassification = null;
-        double minorityClassificationCount = 0;
-        majorityClassification = null;
-        double majorityClassificationCount = 0;
-        for (Serializable val : classificationsAndCounts.keySet()) {
-            if (minorityClassification == null || classificationsAndCounts.get(val).doubleValue() < minorityClassificationCount) {
-                minorityClassification = val;
-                minorityClassificationCount = classificationsAndCounts.get(val).doubleValue();
+        int minorityLabel = 0;
+        int majorityLabel = 0;
+        for (int label = 1; label < countsByLabel.length; label++) {
+            if (countsByLabel[label] < countsByLabel[minorityLabel]) {
+                minorityLabel = label;
             }
-            if (majorityClassification == null || classificationsAndCounts.get(val).doubleValue() > majorityClassificationCount) {
-                majorityClassification = val;
-                majorityClassificationCount = classificationsAndCounts.get(val).doubleValue();
+            if (countsByLabel[label] > countsByLabel[majorityLabel]) {
+                majorityLabel = label;
             }
         }
-        majorityToMinorityRatio = classificationsAndCounts.get(majorityClassification).doubleValue() / classificationsAndCounts.get(minorityClassification).doubleValue();
-        writeClassificationPropertiesOfDataSet(minorityClassification, majorityClassification, binaryClassifications, majorityToMinorityRatio);
-        return new HashSet<>(classificationsAndCounts.keySet());
+        double majorityToMinorityRatio = countsByLabel[majorityLabel] / countsByLabel[minorityLabel];
+        this.minorityLabel = minorityLabel;
+        this.majorityLabel = majorityLabel;
+        writeClassificationPropertiesOfDataSet(trainingData.getLabelValue(minorityLabel), trainingData.getLabelValue(majorityLabel), true, majorityToMinorityRatio);
+        return classifications;
     }
 
     private synchronized void setBinaryClassifications(boolean binaryClassifications) {
@@ -239,295 +492,827 @@ public final class TreeBuilder<T extends ClassifierInstance> implements Predicti
         this.majorityToMinorityRatio = majorityToMinorityRatio;
     }
 
-    private double[] createNumericSplit(final Iterable<T> trainingData, final String attribute) {
-        final ReservoirSampler<Double> reservoirSampler = new ReservoirSampler<Double>(RESERVOIR_SIZE, rand);
-        for (final T instance : trainingData) {
-            Serializable value = instance.getAttributes().get(attribute);
-            if (value == null) {
-                value = 0;
+    private double[] createNumericSplit(final int[] rows, final int from, final int to, final int attribute) {
+        final double[] values = trainingData.getNumericColumn(attribute);
+        final double[] weights = trainingData.getWeights();
+        return new ShardedAccumulator<QuantileSketch>() {
+            @Override
+            QuantileSketch accumulate(int from, int to) {
+                final QuantileSketch sketch = new QuantileSketch(QUANTILE_SKETCH_CAPACITY);
+                for (int i = from; i < to; i++) {
+                    sketch.add(values[rows[i]], weights[rows[i]]);
+                }
+                return sketch;
+            }
+
+            @Override
+            QuantileSketch merge(QuantileSketch sketch, QuantileSketch other) {
+                sketch.merge(other);
+                return sketch;
+            }
+        }.accumulateInShards(from, to).getQuantiles(ordinalTestSpilts - 1);
+    }
+
+    /**
+     * @return the histograms of the numeric attributes the tree may split on over rows[from] to rows[to - 1]
+     */
+    private double[][] createHistograms(final int[] rows, final int from, final int to) {
+        return new ShardedAccumulator<double[][]>() {
+            @Override
+            double[][] accumulate(int from, int to) {
+                return numericBins.createHistograms(rows, from, to, treeAttributes);
+            }
+
+            @Override
+            double[][] merge(double[][] histograms, double[][] other) {
+                NumericBins.add(histograms, other);
+                return histograms;
+            }
+        }.accumulateInShards(from, to);
+    }
+
+    /**
+     * @param majorityLabelWeight what the counts of the majority label are multiplied by, see {@link NodeSample}
+     * @return the counts of rows[from] to rows[to - 1] by code of a categorical attribute, as
+     * {@link OrdinalClassificationCounter#countAllByCode}
+     */
+    private OrdinalClassificationCounter[] countAllByCode(final int attribute, final int[] rows, final int from, final int to, final double majorityLabelWeight) {
+        final OrdinalClassificationCounter[] countsByCode = new CountsByBucketAccumulator() {
+            @Override
+            OrdinalClassificationCounter[] accumulate(int from, int to) {
+                return OrdinalClassificationCounter.countAllByCode(trainingData, attribute, rows, from, to);
+            }
+        }.accumulateInShards(from, to);
+        weightMajorityLabel(countsByCode, majorityLabelWeight);
+        return countsByCode;
+    }
+
+    private void weightMajorityLabel(OrdinalClassificationCounter[] counters, double majorityLabelWeight) {
+        if (majorityLabelWeight == 1) {
+            return;
+        }
+        for (OrdinalClassificationCounter counter : counters) {
+            if (counter != null) {
+                counter.scale(majorityLabel, majorityLabelWeight);
             }
-            reservoirSampler.sample(((Number) value).doubleValue());
         }
-        return getSplit(reservoirSampler);
     }
 
-    private Map<String, double[]> createNumericSplits(final Iterable<T> trainingData) {
-        final Map<String, ReservoirSampler<Double>> rsm = Maps.newHashMap();
-        for (final T instance : trainingData) {
-            for (final Entry<String, Serializable> attributeEntry : instance.getAttributes().entrySet()) {
-                if (attributeEntry.getValue() instanceof Number) {
-                    ReservoirSampler<Double> reservoirSampler = rsm.get(attributeEntry.getKey());
-                    if (reservoirSampler == null) {
-                        reservoirSampler = new ReservoirSampler<>(RESERVOIR_SIZE, rand);
-                        rsm.put(attributeEntry.getKey(), reservoirSampler);
+    /**
+     * Statistics accumulated over a range of a node's rows.  Ranges of more than ROWS_PER_SHARD rows are split into
+     * shards, each accumulated into its own buffers, which are merged pairwise, forking the first half of every pair,
+     * so that a single large node (eg. the root) can be scanned by several threads.  The shards are forked in the
+     * builder's fork-join pool if it has one, or else in a pool shared by all builders.  They don't depend on
+     * whether they're accumulated in parallel, and are merged in the same order, so neither do the statistics.
+     */
+    private abstract class ShardedAccumulator<S> {
+        abstract S accumulate(int from, int to);
+
+        /**
+         * @return statistics merged with other, the statistics of the rows following its own, which may reuse either
+         */
+        abstract S merge(S statistics, S other);
+
+        final S accumulateInShards(final int from, final int to) {
+            if (to - from <= ROWS_PER_SHARD) {
+                return accumulate(from, to);
+            }
+            if (!ForkJoinTask.inForkJoinPool()) {
+                // the builder has no pool of its own (see buildRoot)
+                return getShardPool().invoke(ForkJoinTask.adapt(new Callable<S>() {
+                    @Override
+                    public S call() throws Exception {
+                        return accumulateInShards(from, to);
                     }
-                    reservoirSampler.sample(((Number) attributeEntry.getValue()).doubleValue());
-                }
+                }));
             }
+            final int mid = (from + to) >>> 1;
+            // we're running in a fork-join pool, so can fork the first half from here
+            final ForkJoinTask<S> firstHalf = ForkJoinTask.adapt(new Callable<S>() {
+                @Override
+                public S call() throws Exception {
+                    return accumulateInShards(from, mid);
+                }
+            }).fork();
+            final S secondHalf = accumulateInShards(mid, to);
+            return merge(firstHalf.join(), secondHalf);
         }
-        final Map<String, double[]> splits = Maps.newHashMap();
-        for (final Entry<String, ReservoirSampler<Double>> e : rsm.entrySet()) {
-            final double[] split = getSplit(e.getValue());
-            splits.put(e.getKey(), split);
+    }
+
+    private static synchronized ForkJoinPool getShardPool() {
+        if (shardPool == null) {
+            shardPool = new ForkJoinPool();
+        }
+        return shardPool;
+    }
+
+    private abstract class CountsByBucketAccumulator extends ShardedAccumulator<OrdinalClassificationCounter[]> {
+        @Override
+        OrdinalClassificationCounter[] merge(OrdinalClassificationCounter[] counts, OrdinalClassificationCounter[] other) {
+            OrdinalClassificationCounter.addAll(counts, other);
+            return counts;
+        }
+    }
+
+    /**
+     * @return candidate thresholds for every numeric attribute the tree may split on, indexed by attribute id (null
+     * for categorical attributes and those it may not split on)
+     */
+    private double[][] createNumericSplits(final int[] rows) {
+        final double[][] splits = new double[trainingData.getNumAttributes()][];
+        for (int attribute : treeAttributes) {
+            if (trainingData.isNumeric(attribute)) {
+                splits[attribute] = createNumericSplit(rows, 0, rows.length, attribute);
+            }
         }
         return splits;
     }
 
-    private double[] getSplit(ReservoirSampler<Double> reservoirSampler) {
-        final ArrayList<Double> splitList = Lists.newArrayList();
-        for (final Double sample : reservoirSampler.getSamples()) {
-            splitList.add(sample);
+    /**
+     * Builds the tree on the fork-join pool if there is one, so that attributes and subtrees can be forked from
+     * wherever they are in the tree.
+     */
+    private Node buildRoot(final int[] rows) {
+        if (forkJoinPool == null) {
+            return buildFromRoot(rows);
+        }
+        return forkJoinPool.invoke(ForkJoinTask.adapt(new Callable<Node>() {
+            @Override
+            public Node call() throws Exception {
+                return buildFromRoot(rows);
+            }
+        }));
+    }
+
+    /**
+     * @param rows all of the rows, or null if growing the tree level-wise
+     */
+    private Node buildFromRoot(final int[] rows) {
+        if (levelWise) {
+            return buildLevelWise(OrdinalClassificationCounter.countAll(trainingData));
+        }
+        final OrdinalClassificationCounter counts = OrdinalClassificationCounter.countAll(trainingData, rows, 0, rows.length);
+        if (numericBins != null) {
+            return buildTree(null, rows, 0, rows.length, 0, counts, null, createHistograms(rows, 0, rows.length));
+        }
+        return buildTree(null, rows, 0, rows.length, 0, counts, extraTrees ? null : createNumericSplits(rows), null);
+    }
+
+    /**
+     * Grows the tree a level at a time.  The rows of each level's nodes are tracked by nodeOfRow, which holds the
+     * index of every row's node in the frontier, or -1 once the row has reached a leaf.  The columns are only read
+     * through buffers, and sequentially, so the training data may be memory-mapped.
+     *
+     * @param counts the classification counts of all the rows
+     */
+    private Node buildLevelWise(final OrdinalClassificationCounter counts) {
+        final int[] nodeOfRow = new int[trainingData.size()];
+        final FrontierNode root = new FrontierNode(null, true, counts, trainingData.size());
+        List<FrontierNode> frontier = Lists.newArrayList(root);
+        for (int depth = 0; !frontier.isEmpty(); depth++) {
+            if (depth < maxDepth) {
+                // the nodes of the last level can only become leaves, so their histograms would go unused
+                accumulateHistograms(frontier, nodeOfRow);
+                chooseSplits(frontier);
+            }
+            frontier = routeRowsToChildren(frontier, nodeOfRow, depth);
+        }
+        return root.node;
+    }
+
+    /**
+     * Gives every node of the frontier its histograms (over categorical as well as numeric attributes), scanning
+     * each column once for the nodes that are to be scanned and getting those of their siblings by subtraction.
+     */
+    private void accumulateHistograms(final List<FrontierNode> frontier, final int[] nodeOfRow) {
+        final int numLabels = trainingData.getNumLabels();
+        final IntBuffer labels = trainingData.getLabelBuffer();
+        final DoubleBuffer weights = trainingData.getWeightBuffer();
+        final double[][] histogramsOfNode = new double[frontier.size()][];
+        for (FrontierNode node : frontier) {
+            if (node.scanned) {
+                node.histograms = new double[trainingData.getNumAttributes()][];
+            }
+        }
+        for (int attribute : treeAttributes) {
+            final ByteBuffer bins = trainingData.isNumeric(attribute) ? numericBins.getBinBuffer(attribute) : null;
+            final IntBuffer codes = trainingData.isNumeric(attribute) ? null : trainingData.getCategoricalColumnBuffer(attribute);
+            final int numBuckets = bins != null ? numericBins.getNumBins(attribute) : trainingData.getNumCategoricalValues(attribute);
+            for (int i = 0; i < histogramsOfNode.length; i++) {
+                final FrontierNode node = frontier.get(i);
+                histogramsOfNode[i] = node.scanned ? node.histograms[attribute] = new double[numBuckets * numLabels] : null;
+            }
+            for (int row = 0; row < nodeOfRow.length; row++) {
+                if (nodeOfRow[row] < 0) {
+                    continue;
+                }
+                final double[] histogram = histogramsOfNode[nodeOfRow[row]];
+                if (histogram != null) {
+                    final int bucket = bins != null ? bins.get(row) & 0xFF : codes.get(row);
+                    histogram[bucket * numLabels + labels.get(row)] += weights.get(row);
+                }
+            }
+        }
+        for (FrontierNode node : frontier) {
+            if (!node.scanned) {
+                // the parent's histograms, which aren't needed any more, become this node's
+                NumericBins.subtract(node.histograms, node.sibling.histograms);
+            }
+        }
+    }
+
+    /**
+     * Finds the best split of every node of the frontier, concurrently if building subtrees in parallel.
+     */
+    private void chooseSplits(final List<FrontierNode> frontier) {
+        if (subtreeParallelism == 1 || frontier.size() < 2) {
+            for (FrontierNode node : frontier) {
+                chooseSplit(node);
+            }
+            return;
+        }
+        final List<ForkJoinTask<?>> splitChoices = Lists.newArrayListWithCapacity(frontier.size());
+        for (final FrontierNode node : frontier) {
+            splitChoices.add(ForkJoinTask.adapt(new Runnable() {
+                @Override
+                public void run() {
+                    chooseSplit(node);
+                }
+            }));
+        }
+        // we're running in the fork-join pool (see buildRoot), so can fork the choices from here
+        ForkJoinTask.invokeAll(splitChoices);
+    }
+
+    private void chooseSplit(FrontierNode node) {
+        Pair<? extends Branch, Double> bestPair = getBestNodePair(node.parent, null, 0, node.numRows, null, node.histograms, 1);
+        if (bestPair != null && bestPair.getValue1() >= minimumScore) {
+            node.branch = bestPair.getValue0();
         }
-        if (splitList.isEmpty()) {
-            throw new RuntimeException("Split list empty");
+    }
+
+    /**
+     * Moves every row of the frontier to the child of the branch its node has become, then makes leaves of the
+     * nodes without a split, or whose split leaves too few instances in a child, and forgets the rows that were in
+     * them.
+     *
+     * @return the frontier of the next level, the children of the nodes that became branches
+     */
+    private List<FrontierNode> routeRowsToChildren(final List<FrontierNode> frontier, final int[] nodeOfRow, final int depth) {
+        final IntBuffer labels = trainingData.getLabelBuffer();
+        final DoubleBuffer weights = trainingData.getWeightBuffer();
+        final OrdinalClassificationCounter[] childCounts = new OrdinalClassificationCounter[2 * frontier.size()];
+        final int[] childRows = new int[childCounts.length];
+        // numeric thresholds are always bin bounds here, so rows can be routed by bin rather than by value
+        final ByteBuffer[] binsOfNode = new ByteBuffer[frontier.size()];
+        final int[] thresholdBinOfNode = new int[frontier.size()];
+        final IntBuffer[] codesOfNode = new IntBuffer[frontier.size()];
+        final boolean[][] codesInSetOfNode = new boolean[frontier.size()][];
+        for (int i = 0; i < frontier.size(); i++) {
+            final Branch branch = frontier.get(i).branch;
+            if (branch == null) {
+                continue;
+            }
+            childCounts[2 * i] = new OrdinalClassificationCounter(trainingData.getNumLabels());
+            childCounts[2 * i + 1] = new OrdinalClassificationCounter(trainingData.getNumLabels());
+            final int attribute = trainingData.getAttributeId(branch.attribute);
+            if (branch instanceof NumericBranch) {
+                binsOfNode[i] = numericBins.getBinBuffer(attribute);
+                thresholdBinOfNode[i] = numericBins.getBin(attribute, ((NumericBranch) branch).threshold);
+            } else {
+                codesOfNode[i] = trainingData.getCategoricalColumnBuffer(attribute);
+                codesInSetOfNode[i] = getCodesInSet((CategoricalBranch) branch, attribute);
+            }
         }
-        Collections.sort(splitList);
-        final double[] split = new double[ordinalTestSpilts - 1];
-        final int indexMultiplier = splitList.size() / (split.length + 1);
-        for (int x = 0; x < split.length; x++) {
-            split[x] = splitList.get((x + 1) * indexMultiplier);
+        // first route each row to child 2 * node (true) or 2 * node + 1 (false), counting the children as we go
+        for (int row = 0; row < nodeOfRow.length; row++) {
+            final int node = nodeOfRow[row];
+            if (node < 0) {
+                continue;
+            }
+            if (childCounts[2 * node] == null) {
+                nodeOfRow[row] = -1;
+                continue;
+            }
+            final boolean inSet = binsOfNode[node] != null
+                    ? (binsOfNode[node].get(row) & 0xFF) > thresholdBinOfNode[node]
+                    : codesInSetOfNode[node][codesOfNode[node].get(row)];
+            final int child = inSet ? 2 * node : 2 * node + 1;
+            childCounts[child].addClassification(labels.get(row), weights.get(row));
+            childRows[child]++;
+            nodeOfRow[row] = child;
+        }
+        // then decide which children make it into the next frontier
+        final List<FrontierNode> nextFrontier = Lists.newArrayList();
+        final int[] frontierIndexOfChild = new int[childCounts.length];
+        Arrays.fill(frontierIndexOfChild, -1);
+        for (int i = 0; i < frontier.size(); i++) {
+            final FrontierNode node = frontier.get(i);
+            final int trueChild = 2 * i;
+            final int falseChild = 2 * i + 1;
+            if (node.branch == null || childCounts[trueChild].getTotal() < minLeafInstances || childCounts[falseChild].getTotal() < minLeafInstances
+                    || childCounts[trueChild].getTotal() == 0 || childCounts[falseChild].getTotal() == 0) {
+                node.setNode(createLeaf(node.parent, node.counts, depth));
+                continue;
+            }
+            final FrontierNode trueNode = new FrontierNode(node.branch, true, childCounts[trueChild], childRows[trueChild]);
+            final FrontierNode falseNode = new FrontierNode(node.branch, false, childCounts[falseChild], childRows[falseChild]);
+            // as when growing depth-first, only the smaller child is scanned
+            final FrontierNode largerNode = childRows[trueChild] <= childRows[falseChild] ? falseNode : trueNode;
+            largerNode.scanned = false;
+            largerNode.histograms = node.histograms;
+            largerNode.sibling = largerNode == trueNode ? falseNode : trueNode;
+            node.setNode(node.branch);
+            frontierIndexOfChild[trueChild] = nextFrontier.size();
+            nextFrontier.add(trueNode);
+            frontierIndexOfChild[falseChild] = nextFrontier.size();
+            nextFrontier.add(falseNode);
         }
-        return split;
+        for (int row = 0; row < nodeOfRow.length; row++) {
+            if (nodeOfRow[row] >= 0) {
+                nodeOfRow[row] = frontierIndexOfChild[nodeOfRow[row]];
+            }
+        }
+        return nextFrontier;
     }
 
-    private Node buildTree(Branch parent, final Iterable<T> trainingData, final int depth, final Map<String, double[]> splits) {
-        Preconditions.checkArgument(!Iterables.isEmpty(trainingData), "At Depth: " + depth + ". Can't build a tree with no training data");
-        final Leaf thisLeaf = new Leaf(parent, trainingData, depth);
+    /**
+     * Builds the subtree for rows[from] to rows[to - 1], which it may reorder.
+     *
+     * @param counts     the classification counts of the rows, which the caller gets for free while partitioning them
+     * @param splits     candidate thresholds of every numeric attribute, or null if using histograms
+     * @param histograms the histograms of every numeric attribute over the rows, or null if not using histograms
+     */
+    private Node buildTree(Branch parent, final int[] rows, final int from, final int to, final int depth, final OrdinalClassificationCounter counts, final double[][] splits, final double[][] histograms) {
+        Preconditions.checkArgument(to > from, "At Depth: " + depth + ". Can't build a tree with no training data");
         if (depth >= maxDepth) {
-            return thisLeaf;
+            return createLeaf(parent, counts, depth);
         }
-        Pair<? extends Branch, Double> bestPair = getBestNodePair(parent, trainingData, splits);
+        // the split is only searched for on a sample of a large node, but applied to all of it
+        final NodeSample sample = histograms == null ? sampleForSplitSearch(rows, from, to, counts) : null;
+        Pair<? extends Branch, Double> bestPair = sample != null
+                ? getBestNodePair(parent, sample.rows, 0, sample.rows.length, splits, null, sample.majorityLabelWeight)
+                : getBestNodePair(parent, rows, from, to, splits, histograms, 1);
         Branch bestNode = bestPair != null ? bestPair.getValue0() : null;
         double bestScore = bestPair != null ? bestPair.getValue1() : 0;
         // If we were unable to find a useful branch, return the leaf
         if (bestNode == null || bestScore < minimumScore) {
             //(3) subsets with the same attribute value have the same distribution of classifications
-            return thisLeaf;
+            return createLeaf(parent, counts, depth);
         }
-        ArrayList<T> trueTrainingSet = Lists.newArrayList();
-        ArrayList<T> falseTrainingSet = Lists.newArrayList();
-        setTrueAndFalseTrainingSets(trainingData, bestNode, trueTrainingSet, falseTrainingSet);
-        if (trueTrainingSet.size() < this.minLeafInstances) {
-            return thisLeaf;
+        // the true training set is rows[from, mid) and the false training set rows[mid, to)
+        final OrdinalClassificationCounter trueCounts = new OrdinalClassificationCounter(counts.getNumLabels());
+        final OrdinalClassificationCounter falseCounts = new OrdinalClassificationCounter(counts.getNumLabels());
+        final int mid = partition(rows, from, to, bestNode, trueCounts, falseCounts);
+        // a leaf's instances are counted by weight, so that collapsing duplicates into weighted rows gives the same tree
+        if (trueCounts.getTotal() < this.minLeafInstances) {
+            return createLeaf(parent, counts, depth);
         }
-        if (falseTrainingSet.size() < this.minLeafInstances) {
-            return thisLeaf;
+        if (falseCounts.getTotal() < this.minLeafInstances) {
+            return createLeaf(parent, counts, depth);
         }
-        double trueWeight = getTotalWeight(trueTrainingSet);
-        double falseWeight = getTotalWeight(falseTrainingSet);
-        if (trueWeight == 0 || falseWeight == 0) {
-            return thisLeaf;
+        if (trueCounts.getTotal() == 0 || falseCounts.getTotal() == 0) {
+            return createLeaf(parent, counts, depth);
+        }
+        if (histograms != null) {
+            // only scan the smaller child, the parent's histograms (which aren't needed any more) become the larger one's
+            final boolean trueChildIsSmaller = mid - from <= to - mid;
+            final double[][] smallerChildHistograms = trueChildIsSmaller ? createHistograms(rows, from, mid) : createHistograms(rows, mid, to);
+            NumericBins.subtract(histograms, smallerChildHistograms);
+            final double[][] trueHistograms = trueChildIsSmaller ? smallerChildHistograms : histograms;
+            final double[][] falseHistograms = trueChildIsSmaller ? histograms : smallerChildHistograms;
+            if (shouldBuildSubtreesInParallel(mid - from, to - mid)) {
+                buildSubtreesInParallel(bestNode, rows, from, mid, to, depth, trueCounts, null, trueHistograms, falseCounts, null, falseHistograms);
+                return bestNode;
+            }
+            bestNode.trueChild = buildTree(bestNode, rows, from, mid, depth + 1, trueCounts, null, trueHistograms);
+            bestNode.falseChild = buildTree(bestNode, rows, mid, to, depth + 1, falseCounts, null, falseHistograms);
+            return bestNode;
+        }
+        final int bestAttribute = trainingData.getAttributeId(bestNode.attribute);
+        // extremely randomized trees have no splits to replace
+        final boolean replacesSplit = splits != null && bestNode instanceof NumericBranch;
+        if (shouldBuildSubtreesInParallel(mid - from, to - mid)) {
+            // descendants replace the splits of the attributes they split on, so concurrent subtrees need their own
+            final double[][] trueSplits = splits != null ? splits.clone() : null;
+            final double[][] falseSplits = splits != null ? splits.clone() : null;
+            if (replacesSplit) {
+                trueSplits[bestAttribute] = createNumericSplit(rows, from, mid, bestAttribute);
+                falseSplits[bestAttribute] = createNumericSplit(rows, mid, to, bestAttribute);
+            }
+            buildSubtreesInParallel(bestNode, rows, from, mid, to, depth, trueCounts, trueSplits, null, falseCounts, falseSplits, null);
+            return bestNode;
         }
         double[] oldSplit = null;
         // descendants of an numeric branch, first the true split
-        if (bestNode instanceof NumericBranch) {
-            final NumericBranch bestBranch = (NumericBranch) bestNode;
-            oldSplit = splits.get(bestBranch.attribute);
-            splits.put(bestBranch.attribute, createNumericSplit(trueTrainingSet, bestBranch.attribute));
+        if (replacesSplit) {
+            oldSplit = splits[bestAttribute];
+            splits[bestAttribute] = createNumericSplit(rows, from, mid, bestAttribute);
         }
         // Recurse down the true branch
-        bestNode.trueChild = buildTree(bestNode, trueTrainingSet, depth + 1, splits);
+        bestNode.trueChild = buildTree(bestNode, rows, from, mid, depth + 1, trueCounts, splits, null);
         // And now replace the old split if this is an NumericBranch
-        if (bestNode instanceof NumericBranch) {
-            final NumericBranch bestBranch = (NumericBranch) bestNode;
-            splits.put(bestBranch.attribute, createNumericSplit(falseTrainingSet, bestBranch.attribute));
+        if (replacesSplit) {
+            splits[bestAttribute] = createNumericSplit(rows, mid, to, bestAttribute);
         }
         // Recurse down the false branch
-        bestNode.falseChild = buildTree(bestNode, falseTrainingSet, depth + 1, splits);
+        bestNode.falseChild = buildTree(bestNode, rows, mid, to, depth + 1, falseCounts, splits, null);
         // And now replace the original split if this is an NumericBranch
-        if (bestNode instanceof NumericBranch) {
-            final NumericBranch bestBranch = (NumericBranch) bestNode;
-            splits.put(bestBranch.attribute, oldSplit);
+        if (replacesSplit) {
+            splits[bestAttribute] = oldSplit;
         }
         return bestNode;
     }
 
-    private void setTrueAndFalseTrainingSets(Iterable<T> trainingData, Branch bestNode, List<T> trueTrainingSet, List<T> falseTrainingSet) {
-        for (T instance : trainingData) {
-            if (bestNode.decide(instance.getAttributes())) {
-                trueTrainingSet.add(instance);
+    /**
+     * Samples the rows of a node of two-class data with more than splitSearchSampleSize rows, keeping all of its
+     * minority class rows and an evenly spaced selection of its majority class rows, enough to make up the sample
+     * size.
+     *
+     * @return the sample, or null if the node isn't to be sampled
+     */
+    private NodeSample sampleForSplitSearch(final int[] rows, final int from, final int to, final OrdinalClassificationCounter counts) {
+        if (splitSearchSampleSize <= 0 || to - from <= splitSearchSampleSize || !binaryClassifications || minorityLabel == majorityLabel) {
+            return null;
+        }
+        final int[] labels = trainingData.getLabels();
+        final double[] weights = trainingData.getWeights();
+        int minorityRows = 0;
+        for (int i = from; i < to; i++) {
+            if (labels[rows[i]] == minorityLabel) {
+                minorityRows++;
+            }
+        }
+        final int majorityRows = to - from - minorityRows;
+        final int sampledMajorityRows = splitSearchSampleSize - minorityRows;
+        if (sampledMajorityRows <= 0) {
+            return null;
+        }
+        final int[] sampleRows = new int[minorityRows + sampledMajorityRows];
+        int size = 0;
+        // the majority rows are picked by striding through them, sampledMajorityRows out of every majorityRows
+        long stride = 0;
+        double sampledMajorityWeight = 0;
+        for (int i = from; i < to; i++) {
+            final int row = rows[i];
+            if (labels[row] == minorityLabel) {
+                sampleRows[size++] = row;
             } else {
-                falseTrainingSet.add(instance);
+                stride += sampledMajorityRows;
+                if (stride >= majorityRows) {
+                    stride -= majorityRows;
+                    sampleRows[size++] = row;
+                    sampledMajorityWeight += weights[row];
+                }
             }
         }
+        if (sampledMajorityWeight <= 0) {
+            return null;
+        }
+        return new NodeSample(Arrays.copyOf(sampleRows, size), counts.getCount(majorityLabel) / sampledMajorityWeight);
     }
 
-    private Pair<? extends Branch, Double> getBestNodePair(Branch parent, Iterable<T> trainingData, final Map<String, double[]> splits) {
-        //should not be doing the following operation every time we call buildTree
-        Map<String, AttributeCharacteristics> attributeCharacteristics = surveyTrainingData(trainingData);
-        boolean smallTrainingSet = isSmallTrainingSet(trainingData);
-        Pair<? extends Branch, Double> bestPair = null;
-        //TODO: make this lazy in the sense that only numeric attributes that are not randomly rignored should have this done
-        for (final Entry<String, AttributeCharacteristics> attributeCharacteristicsEntry : attributeCharacteristics.entrySet()) {
-            if (this.attributeIgnoringStrategy.ignoreAttribute(attributeCharacteristicsEntry.getKey(), parent)) {
-                continue;
-            }
-            Pair<? extends Branch, Double> thisPair = null;
-            Pair<? extends Branch, Double> numericPair = null;
-            Pair<? extends Branch, Double> categoricalPair = null;
-            if (!smallTrainingSet && attributeCharacteristicsEntry.getValue().isNumber) {
-                numericPair = createNumericNode(parent, attributeCharacteristicsEntry.getKey(), trainingData, splits.get(attributeCharacteristicsEntry.getKey()));
-            } else if (!attributeCharacteristicsEntry.getValue().isNumber) {
-                categoricalPair = createCategoricalNode(parent, attributeCharacteristicsEntry.getKey(), trainingData);
+    /**
+     * The rows that a large node's split is searched for on.  The majority class is undersampled, so its counts
+     * over the sample are multiplied by majorityLabelWeight to estimate those over the whole node, which keeps the
+     * scores of splits comparable with those of unsampled nodes.
+     */
+    private static class NodeSample {
+        final int[] rows;
+        final double majorityLabelWeight;
+
+        NodeSample(int[] rows, double majorityLabelWeight) {
+            this.rows = rows;
+            this.majorityLabelWeight = majorityLabelWeight;
+        }
+    }
+
+    private Leaf createLeaf(Branch parent, OrdinalClassificationCounter counts, int depth) {
+        return new Leaf(parent, counts.toClassificationCounter(trainingData), depth);
+    }
+
+    private boolean shouldBuildSubtreesInParallel(int trueInstances, int falseInstances) {
+        return subtreeParallelism > 1 && Math.min(trueInstances, falseInstances) >= MIN_INSTANCES_TO_BUILD_SUBTREES_IN_PARALLEL;
+    }
+
+    /**
+     * Forks the true subtree, over rows[from, mid), and builds the false one, over rows[mid, to), on this thread.
+     * Must be called from within the fork-join pool.
+     */
+    private void buildSubtreesInParallel(final Branch bestNode, final int[] rows, final int from, final int mid, final int to, final int depth,
+                                         final OrdinalClassificationCounter trueCounts, final double[][] trueSplits, final double[][] trueHistograms,
+                                         final OrdinalClassificationCounter falseCounts, final double[][] falseSplits, final double[][] falseHistograms) {
+        final ForkJoinTask<Node> trueSubtree = ForkJoinTask.adapt(new Callable<Node>() {
+            @Override
+            public Node call() throws Exception {
+                return buildTree(bestNode, rows, from, mid, depth + 1, trueCounts, trueSplits, trueHistograms);
             }
-            if (numericPair != null) {
-                thisPair = numericPair;
+        }).fork();
+        bestNode.falseChild = buildTree(bestNode, rows, mid, to, depth + 1, falseCounts, falseSplits, falseHistograms);
+        bestNode.trueChild = trueSubtree.join();
+    }
+
+    /**
+     * Partitions rows[from, to) in place the way bestNode would partition the corresponding instances, reading the
+     * branch's attribute from its column rather than calling {@link Branch#decide} on every instance, and counts
+     * the classifications on either side as it goes.
+     *
+     * @return the index of the first row of the false training set, the true training set being the rows before it
+     */
+    private int partition(int[] rows, int from, int to, Branch bestNode, OrdinalClassificationCounter trueCounts, OrdinalClassificationCounter falseCounts) {
+        final int attribute = trainingData.getAttributeId(bestNode.attribute);
+        double[] values = null;
+        double threshold = 0;
+        int[] codes = null;
+        boolean[] codesInSet = null;
+        if (bestNode instanceof NumericBranch) {
+            values = trainingData.getNumericColumn(attribute);
+            threshold = ((NumericBranch) bestNode).threshold;
+        } else {
+            codes = trainingData.getCategoricalColumn(attribute);
+            codesInSet = getCodesInSet((CategoricalBranch) bestNode, attribute);
+        }
+        final int[] labels = trainingData.getLabels();
+        final double[] weights = trainingData.getWeights();
+        int mid = from;
+        int end = to;
+        while (mid < end) {
+            final int row = rows[mid];
+            if (values != null ? values[row] > threshold : codesInSet[codes[row]]) {
+                trueCounts.addClassification(labels[row], weights[row]);
+                mid++;
             } else {
-                //(numericPair.getValue1() > categoricalPair.getValue1()) ? numericPair : categoricalPair;
-                thisPair = categoricalPair;
-            }
-            if (bestPair == null || (thisPair != null && bestPair != null && thisPair.getValue1() > bestPair.getValue1())) {
-                bestPair = thisPair;
+                falseCounts.addClassification(labels[row], weights[row]);
+                rows[mid] = rows[--end];
+                rows[end] = row;
             }
         }
-        return bestPair;
+        return mid;
     }
 
-    private double getTotalWeight(List<T> trainingSet) {
-        double trueWeight = 0;
-        for (T instance : trainingSet) {
-            trueWeight += instance.getWeight();
+    private boolean[] getCodesInSet(CategoricalBranch branch, int attribute) {
+        final boolean[] codesInSet = new boolean[trainingData.getNumCategoricalValues(attribute)];
+        // missing values always go the way of the outset, see CategoricalBranch.decide
+        for (int code = 0; code < codesInSet.length; code++) {
+            codesInSet[code] = code != ColumnarTrainingData.MISSING_CODE && branch.inSet.contains(trainingData.getCategoricalValue(attribute, code));
         }
-        return trueWeight;
+        return codesInSet;
     }
 
-    private boolean isSmallTrainingSet(Iterable<T> trainingData) {
-        boolean smallTrainingSet = true;
-        int tsCount = 0;
-        for (T instance : trainingData) {
-            tsCount++;
-            if (tsCount > SMALL_TRAINING_SET_LIMIT) {
-                smallTrainingSet = false;
-                break;
+    /**
+     * @param majorityLabelWeight what the counts of the majority label are multiplied by, see {@link NodeSample}
+     */
+    private Pair<? extends Branch, Double> getBestNodePair(final Branch parent, final int[] rows, final int from, final int to, final double[][] splits, final double[][] histograms, final double majorityLabelWeight) {
+        final boolean smallTrainingSet = isSmallTrainingSet(to - from);
+        final List<Integer> attributes = getNodeAttributes(parent);
+        Pair<? extends Branch, Double> bestPair = null;
+        if (attributeParallelism == 1 || attributes.size() < 2 || to - from < MIN_INSTANCES_TO_EVALUATE_ATTRIBUTES_IN_PARALLEL) {
+            for (int attribute : attributes) {
+                bestPair = getBetterPair(bestPair, getBestPairForAttribute(parent, attribute, rows, from, to, smallTrainingSet, splits, histograms, majorityLabelWeight));
             }
+            return bestPair;
+        }
+        final List<ForkJoinTask<Pair<? extends Branch, Double>>> attributeEvaluations = Lists.newArrayListWithCapacity(attributes.size());
+        for (final int attribute : attributes) {
+            attributeEvaluations.add(ForkJoinTask.adapt(new Callable<Pair<? extends Branch, Double>>() {
+                @Override
+                public Pair<? extends Branch, Double> call() throws Exception {
+                    return getBestPairForAttribute(parent, attribute, rows, from, to, smallTrainingSet, splits, histograms, majorityLabelWeight);
+                }
+            }));
         }
-        return smallTrainingSet;
+        // we're running in the fork-join pool (see buildRoot), so can fork the evaluations from here
+        ForkJoinTask.invokeAll(attributeEvaluations);
+        // reduced in attribute order so that ties are broken as they are when evaluating attributes sequentially
+        for (ForkJoinTask<Pair<? extends Branch, Double>> attributeEvaluation : attributeEvaluations) {
+            bestPair = getBetterPair(bestPair, attributeEvaluation.join());
+        }
+        return bestPair;
     }
 
-    private Map<String, AttributeCharacteristics> surveyTrainingData(final Iterable<T> trainingData) {
-        Map<String, AttributeCharacteristics> attributeCharacteristics = Maps.newHashMap();
-        for (T instance : trainingData) {
-            for (Entry<String, Serializable> e : instance.getAttributes().entrySet()) {
-                AttributeCharacteristics attributeCharacteristic = attributeCharacteristics.get(e.getKey());
-                if (attributeCharacteristic == null) {
-                    attributeCharacteristic = new AttributeCharacteristics();
-                    attributeCharacteristics.put(e.getKey(), attributeCharacteristic);
-                }
-                if (!(e.getValue() instanceof Number)) {
-                    attributeCharacteristic.isNumber = false;
-                }
+    /**
+     * Decided up front and in order, so that randomly ignoring attributes draws the same random numbers however
+     * the remaining attributes are evaluated.
+     *
+     * @return the ids of the attributes a node may split on, in ascending order
+     */
+    private List<Integer> getNodeAttributes(Branch parent) {
+        final List<Integer> attributes = Lists.newArrayList();
+        if (attributeIgnoringStrategy instanceof RandomFeatureSubspace) {
+            final RandomFeatureSubspace subspace = (RandomFeatureSubspace) attributeIgnoringStrategy;
+            for (int attribute : subspace.getScope() == RandomFeatureSubspace.Scope.TREE ? treeAttributes : subspace.sampleSubspace(trainingData.getNumAttributes())) {
+                attributes.add(attribute);
             }
+            return attributes;
+        }
+        for (int attribute : treeAttributes) {
+            if (!this.attributeIgnoringStrategy.ignoreAttribute(trainingData.getAttributeName(attribute), parent)) {
+                attributes.add(attribute);
+            }
+        }
+        return attributes;
+    }
+
+    private Pair<? extends Branch, Double> getBestPairForAttribute(Branch parent, int attribute, int[] rows, int from, int to, boolean smallTrainingSet, double[][] splits, double[][] histograms, double majorityLabelWeight) {
+        if (!trainingData.isNumeric(attribute)) {
+            // histograms only cover categorical attributes when growing level-wise, which has no rows to count
+            final OrdinalClassificationCounter[] countsByCode = histograms != null && histograms[attribute] != null
+                    ? OrdinalClassificationCounter.countAllByBucket(histograms[attribute], trainingData.getNumLabels())
+                    : countAllByCode(attribute, rows, from, to, majorityLabelWeight);
+            return extraTrees ? createRandomCategoricalNode(parent, attribute, countsByCode) : createCategoricalNode(parent, attribute, countsByCode, to - from);
+        }
+        if (smallTrainingSet) {
+            return null;
+        }
+        if (extraTrees) {
+            return histograms != null ? createRandomNumericNode(parent, attribute, histograms[attribute]) : createRandomNumericNode(parent, attribute, rows, from, to, majorityLabelWeight);
         }
-        return attributeCharacteristics;
+        return histograms != null ? createNumericNode(parent, attribute, histograms[attribute]) : createNumericNode(parent, attribute, rows, from, to, splits[attribute], majorityLabelWeight);
+    }
+
+    private static Pair<? extends Branch, Double> getBetterPair(Pair<? extends Branch, Double> bestPair, Pair<? extends Branch, Double> thisPair) {
+        if (bestPair == null || (thisPair != null && thisPair.getValue1() > bestPair.getValue1())) {
+            return thisPair;
+        }
+        return bestPair;
+    }
+
+    private boolean isSmallTrainingSet(int numInstances) {
+        return numInstances <= SMALL_TRAINING_SET_LIMIT;
     }
 
-    private Pair<? extends Branch, Double> createCategoricalNode(Node parent, String attribute, Iterable<T> instances) {
+    /**
+     * @param countsByCode the counts of each of the attribute's codes over the node's instances, null for codes
+     *                     that none of them have
+     */
+    private Pair<? extends Branch, Double> createCategoricalNode(Node parent, int attribute, OrdinalClassificationCounter[] countsByCode, int numInstances) {
         if (binaryClassifications) {
-            return createTwoClassCategoricalNode(parent, attribute, instances);
+            return createTwoClassCategoricalNode(parent, attribute, countsByCode);
+        } else if (oneVsRestCategoricalSplits) {
+            return createOneVsRestCategoricalNode(parent, attribute, countsByCode, numInstances);
         } else {
-            return createNClassCategoricalNode(parent, attribute, instances);
+            return createNClassCategoricalNode(parent, attribute, countsByCode, numInstances);
         }
     }
 
-    private Pair<? extends Branch, Double> createTwoClassCategoricalNode(Node parent, final String attribute, final Iterable<T> instances) {
-        double bestScore = 0;
-        final Pair<ClassificationCounter, List<AttributeValueWithClassificationCounter>> valueOutcomeCountsPairs = ClassificationCounter.getSortedListOfAttributeValuesWithClassificationCounters(instances, attribute, minorityClassification);
-        ClassificationCounter outCounts = new ClassificationCounter(valueOutcomeCountsPairs.getValue0());
-        ClassificationCounter inCounts = new ClassificationCounter();
-        final List<AttributeValueWithClassificationCounter> valuesWithClassificationCounters = valueOutcomeCountsPairs.getValue1();
-        double numTrainingExamples = valueOutcomeCountsPairs.getValue0().getTotal();
-        Serializable lastValOfInset = valuesWithClassificationCounters.get(0).attributeValue;
-        double probabilityOfBeingInInset = 0;
-        int valuesInTheInset = 0;
-        int attributesWithSufficientValues = labelAttributeValuesWithInsufficientData(valuesWithClassificationCounters);
+    /**
+     * Scores a single split of a categorical attribute, with each of its values that could be in an inset put in the
+     * inset with probability 1/2 (but at least one of them in and one out), as in extremely randomized trees.
+     */
+    private Pair<? extends Branch, Double> createRandomCategoricalNode(Node parent, final int attribute, final OrdinalClassificationCounter[] countsByCode) {
+        final Integer[] codes = getCodesWithCounts(countsByCode, true);
+        if (codes.length < 2) {
+            return null;
+        }
+        final Random random = MapUtils.random;
+        final boolean[] inInset = new boolean[codes.length];
+        int insetSize = 0;
+        for (int i = 0; i < codes.length; i++) {
+            inInset[i] = random.nextBoolean();
+            if (inInset[i]) {
+                insetSize++;
+            }
+        }
+        if (insetSize == 0 || insetSize == codes.length) {
+            // flip one value so that neither side is empty
+            final int i = random.nextInt(codes.length);
+            inInset[i] = !inInset[i];
+        }
+        final OrdinalClassificationCounter inCounts = new OrdinalClassificationCounter(trainingData.getNumLabels());
+        final OrdinalClassificationCounter outCounts = new OrdinalClassificationCounter(trainingData.getNumLabels());
+        final Set<Serializable> inSet = Sets.newHashSet();
+        for (OrdinalClassificationCounter counts : countsByCode) {
+            if (counts != null) {
+                outCounts.add(counts);
+            }
+        }
+        for (int i = 0; i < codes.length; i++) {
+            if (inInset[i]) {
+                inCounts.add(countsByCode[codes[i]]);
+                outCounts.subtract(countsByCode[codes[i]]);
+                inSet.add(trainingData.getCategoricalValue(attribute, codes[i]));
+            }
+        }
+        if (inCounts.getTotal() < minLeafInstances || outCounts.getTotal() < minLeafInstances) {
+            return null;
+        }
+        final double score = scoreSplit(inCounts, outCounts);
+        if (score <= 0) {
+            return null;
+        }
+        final double probabilityOfBeingInInset = inCounts.getTotal() / (inCounts.getTotal() + outCounts.getTotal());
+        return Pair.with(new CategoricalBranch(parent, trainingData.getAttributeName(attribute), inSet, probabilityOfBeingInInset), score);
+    }
+
+    private Pair<? extends Branch, Double> createTwoClassCategoricalNode(Node parent, final int attribute, final OrdinalClassificationCounter[] countsByCode) {
+        final Integer[] codes = getCodesWithCounts(countsByCode, false);
+        sortByProbabilityOfLabel(codes, countsByCode, minorityLabel);
+        final OrdinalClassificationCounter totals = new OrdinalClassificationCounter(trainingData.getNumLabels());
+        final boolean[] sufficientDataByCode = new boolean[countsByCode.length];
+        int attributesWithSufficientValues = 0;
+        for (int code : codes) {
+            totals.add(countsByCode[code]);
+            sufficientDataByCode[code] = this.minDiscreteAttributeValueOccurances <= 0 || !attributeValueOrIntervalOfValuesHasInsufficientStatistics(countsByCode[code]);
+            if (sufficientDataByCode[code]) {
+                attributesWithSufficientValues++;
+            }
+        }
         if (attributesWithSufficientValues <= 1) {
             return null;
         }
-        double intrinsicValueOfAttribute = getIntrinsicValueOfAttribute(valuesWithClassificationCounters, numTrainingExamples);
-        for (final AttributeValueWithClassificationCounter valueWithClassificationCounter : valuesWithClassificationCounters) {
-            final ClassificationCounter testValCounts = valueWithClassificationCounter.classificationCounter;
-            if (testValCounts == null || valueWithClassificationCounter.attributeValue.equals(MISSING_VALUE)) {
+        double intrinsicValueOfAttribute = getIntrinsicValueOfAttribute(countsByCode, codes, totals.getTotal());
+        double bestScore = 0;
+        int lastCodeOfInset = codes[0];
+        double probabilityOfBeingInInset = 0;
+        final OrdinalClassificationCounter inCounts = new OrdinalClassificationCounter(trainingData.getNumLabels());
+        final OrdinalClassificationCounter outCounts = new OrdinalClassificationCounter(totals);
+        for (int code : codes) {
+            if (code == ColumnarTrainingData.MISSING_CODE || !sufficientDataByCode[code]) {
                 continue;
             }
-            if (this.minDiscreteAttributeValueOccurances > 0) {
-                if (!testValCounts.hasSufficientData()) {
-                    continue;
-                }
-            }
-            inCounts = inCounts.add(testValCounts);
-            outCounts = outCounts.subtract(testValCounts);
+            inCounts.add(countsByCode[code]);
+            outCounts.subtract(countsByCode[code]);
             if (inCounts.getTotal() < minLeafInstances || outCounts.getTotal() < minLeafInstances) {
                 continue;
             }
-            double thisScore = scorer.scoreSplit(inCounts, outCounts);
-            valuesInTheInset++;
+            double thisScore = scoreSplit(inCounts, outCounts);
             if (penalizeCategoricalSplitsBySplitAttributeInformationValue) {
                 thisScore = thisScore * (1 - degreeOfGainRatioPenalty) + degreeOfGainRatioPenalty * (thisScore / intrinsicValueOfAttribute);
             }
             if (thisScore > bestScore) {
                 bestScore = thisScore;
-                lastValOfInset = valueWithClassificationCounter.attributeValue;
-                probabilityOfBeingInInset = inCounts.getTotal() / (inCounts.getTotal() + outCounts.getTotal());
+                lastCodeOfInset = code;
+                probabilityOfBeingInInset = inCounts.getTotal() / totals.getTotal();
             }
         }
         final Set<Serializable> inSet = Sets.newHashSet();
-        final Set<Serializable> outSet = Sets.newHashSet();
-        boolean insetIsBuiltNowBuildingOutset = false;
-        inCounts = new ClassificationCounter();
-        outCounts = new ClassificationCounter();
-        for (AttributeValueWithClassificationCounter attributeValueWithClassificationCounter : valuesWithClassificationCounters) {
-            if (!insetIsBuiltNowBuildingOutset && attributeValueWithClassificationCounter.classificationCounter.hasSufficientData()) {
-                inSet.add(attributeValueWithClassificationCounter.attributeValue);
-                inCounts.add(attributeValueWithClassificationCounter.classificationCounter);
-                if (attributeValueWithClassificationCounter.attributeValue.equals(lastValOfInset)) {
-                    insetIsBuiltNowBuildingOutset = true;
+        for (int code : codes) {
+            if (sufficientDataByCode[code]) {
+                inSet.add(code == ColumnarTrainingData.MISSING_CODE ? MISSING_VALUE : trainingData.getCategoricalValue(attribute, code));
+                if (code == lastCodeOfInset) {
+                    break;
                 }
-            } else {
-                outCounts.add(attributeValueWithClassificationCounter.classificationCounter);
             }
         }
-        Pair<CategoricalBranch, Double> bestPair = Pair.with(new CategoricalBranch(parent, attribute, inSet, probabilityOfBeingInInset), bestScore);
-        return bestPair;
+        return Pair.with(new CategoricalBranch(parent, trainingData.getAttributeName(attribute), inSet, probabilityOfBeingInInset), bestScore);
     }
 
-    private int labelAttributeValuesWithInsufficientData(List<AttributeValueWithClassificationCounter> valuesWithClassificationCounters) {
-        int attributesWithSuffValues = 0;
-        for (final AttributeValueWithClassificationCounter valueWithClassificationCounter : valuesWithClassificationCounters) {
-            if (this.minDiscreteAttributeValueOccurances > 0) {
-                ClassificationCounter testValCounts = valueWithClassificationCounter.classificationCounter;
-                if (attributeValueOrIntervalOfValuesHasInsufficientStatistics(testValCounts)) {
-                    testValCounts.setHasSufficientData(false);
-                } else {
-                    attributesWithSuffValues++;
-                }
-            } else {
-                attributesWithSuffValues++;
+    /**
+     * @return the codes that have counts, excluding the missing value code and values that should be ignored if
+     * onlyCandidatesForInset
+     */
+    private Integer[] getCodesWithCounts(final OrdinalClassificationCounter[] countsByCode, final boolean onlyCandidatesForInset) {
+        final List<Integer> codes = Lists.newArrayList();
+        for (int code = 0; code < countsByCode.length; code++) {
+            if (countsByCode[code] == null) {
+                continue;
             }
+            if (onlyCandidatesForInset && (code == ColumnarTrainingData.MISSING_CODE || (this.minDiscreteAttributeValueOccurances > 0 && shouldWeIgnoreThisValue(countsByCode[code])))) {
+                continue;
+            }
+            codes.add(code);
+        }
+        return codes.toArray(new Integer[codes.size()]);
+    }
+
+    /**
+     * Sorts codes by the probability of their values having a label, most likely first, ties going to the lower code
+     * so that sweeps visit values in the same order on every build.
+     */
+    private static void sortByProbabilityOfLabel(final Integer[] codes, final OrdinalClassificationCounter[] countsByCode, final int label) {
+        final double[] probabilityOfLabelByCode = new double[countsByCode.length];
+        for (int code : codes) {
+            probabilityOfLabelByCode[code] = countsByCode[code].getCount(label) / countsByCode[code].getTotal();
         }
-        return attributesWithSuffValues;
+        Arrays.sort(codes, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer code1, Integer code2) {
+                final int byProbability = Double.compare(probabilityOfLabelByCode[code2], probabilityOfLabelByCode[code1]);
+                return byProbability != 0 ? byProbability : Integer.compare(code1, code2);
+            }
+        });
     }
 
-    private double getIntrinsicValueOfAttribute(List<AttributeValueWithClassificationCounter> valuesWithCCs, double numTrainingExamples) {
+    private double getIntrinsicValueOfAttribute(OrdinalClassificationCounter[] countsByCode, Integer[] codes, double numTrainingExamples) {
         double informationValue = 0;
         double attributeValProb = 0;
-        for (AttributeValueWithClassificationCounter attributeValueWithClassificationCounter : valuesWithCCs) {
-            ClassificationCounter classificationCounter = attributeValueWithClassificationCounter.classificationCounter;
-            attributeValProb = classificationCounter.getTotal() / (numTrainingExamples);
+        for (int code : codes) {
+            attributeValProb = countsByCode[code].getTotal() / (numTrainingExamples);
             informationValue -= attributeValProb * Math.log(attributeValProb) / Math.log(2);
         }
         return informationValue;
     }
 
-    private Pair<? extends Branch, Double> createNClassCategoricalNode(Node parent, final String attribute, final Iterable<T> instances) {
-        final Set<Serializable> values = getAttrinbuteValues(instances, attribute);
-        if (insufficientTrainingDataGivenNumberOfAttributeValues(instances, values)) {
+    private Pair<? extends Branch, Double> createNClassCategoricalNode(Node parent, final int attribute, final OrdinalClassificationCounter[] countsByCode, final int numInstances) {
+        final Pair<ClassificationCounter, Map<Serializable, ClassificationCounter>> valueOutcomeCountsPair = ClassificationCounter.countAllByAttributeValues(trainingData, attribute, countsByCode);
+        final Map<Serializable, ClassificationCounter> valueOutcomeCounts = valueOutcomeCountsPair.getValue1();
+        final Set<Serializable> values = Sets.newHashSet(valueOutcomeCounts.keySet());
+        if (insufficientTrainingDataGivenNumberOfAttributeValues(numInstances, values.size())) {
             return null;
         }
         final Set<Serializable> inValueSet = Sets.newHashSet();
         ClassificationCounter inSetClassificationCounts = new ClassificationCounter();
-        final Pair<ClassificationCounter, Map<Serializable, ClassificationCounter>> valueOutcomeCountsPair = ClassificationCounter.countAllByAttributeValues(instances, attribute);
         ClassificationCounter outSetClassificationCounts = valueOutcomeCountsPair.getValue0();
-        final Map<Serializable, ClassificationCounter> valueOutcomeCounts = valueOutcomeCountsPair.getValue1();
         double insetScore = 0;
         while (true) {
             com.google.common.base.Optional<ScoreValuePair> bestValueAndScore = com.google.common.base.Optional.absent();
@@ -564,11 +1349,64 @@ public final class TreeBuilder<T extends ClassifierInstance> implements Predicti
             return null;
         }
         double probabilityOfBeingInInset = inSetClassificationCounts.getTotal() / (inSetClassificationCounts.getTotal() + outSetClassificationCounts.getTotal());
-        return Pair.with(new CategoricalBranch(parent, attribute, inValueSet, probabilityOfBeingInInset), insetScore);
+        return Pair.with(new CategoricalBranch(parent, trainingData.getAttributeName(attribute), inValueSet, probabilityOfBeingInInset), insetScore);
     }
 
-    private boolean insufficientTrainingDataGivenNumberOfAttributeValues(final Iterable<T> trainingData, final Set<Serializable> values) {
-        final int averageInstancesPerValue = Iterables.size(trainingData) / values.size();
+    private Pair<? extends Branch, Double> createOneVsRestCategoricalNode(Node parent, final int attribute, final OrdinalClassificationCounter[] countsByCode, final int numInstances) {
+        final OrdinalClassificationCounter totals = new OrdinalClassificationCounter(trainingData.getNumLabels());
+        int numValues = 0;
+        for (OrdinalClassificationCounter counts : countsByCode) {
+            if (counts != null) {
+                totals.add(counts);
+                numValues++;
+            }
+        }
+        if (insufficientTrainingDataGivenNumberOfAttributeValues(numInstances, numValues)) {
+            return null;
+        }
+        final OrdinalClassificationCounter inCounts = new OrdinalClassificationCounter(trainingData.getNumLabels());
+        final OrdinalClassificationCounter outCounts = new OrdinalClassificationCounter(trainingData.getNumLabels());
+        double bestScore = 0;
+        Integer[] bestCodeOrder = null;
+        int bestInsetSize = 0;
+        double probabilityOfBeingInInset = 0;
+        final Integer[] candidateCodes = getCodesWithCounts(countsByCode, true);
+        for (int label = 0; label < totals.getNumLabels(); label++) {
+            if (totals.getCount(label) == 0) {
+                continue;
+            }
+            final Integer[] codes = Arrays.copyOf(candidateCodes, candidateCodes.length);
+            sortByProbabilityOfLabel(codes, countsByCode, label);
+            inCounts.clear();
+            outCounts.clear();
+            outCounts.add(totals);
+            for (int i = 0; i < codes.length; i++) {
+                inCounts.add(countsByCode[codes[i]]);
+                outCounts.subtract(countsByCode[codes[i]]);
+                if (inCounts.getTotal() < minLeafInstances || outCounts.getTotal() < minLeafInstances) {
+                    continue;
+                }
+                final double thisScore = scoreSplit(inCounts, outCounts);
+                if (thisScore > bestScore) {
+                    bestScore = thisScore;
+                    bestCodeOrder = codes;
+                    bestInsetSize = i + 1;
+                    probabilityOfBeingInInset = inCounts.getTotal() / totals.getTotal();
+                }
+            }
+        }
+        if (bestCodeOrder == null) {
+            return null;
+        }
+        final Set<Serializable> inSet = Sets.newHashSet();
+        for (int i = 0; i < bestInsetSize; i++) {
+            inSet.add(trainingData.getCategoricalValue(attribute, bestCodeOrder[i]));
+        }
+        return Pair.with(new CategoricalBranch(parent, trainingData.getAttributeName(attribute), inSet, probabilityOfBeingInInset), bestScore);
+    }
+
+    private boolean insufficientTrainingDataGivenNumberOfAttributeValues(final int numInstances, final int numValues) {
+        final int averageInstancesPerValue = numInstances / numValues;
         final boolean notEnoughTrainingDataGivenNumberOfValues = averageInstancesPerValue < Math.max(this.minDiscreteAttributeValueOccurances, HARD_MINIMUM_INSTANCES_PER_CATEGORICAL_VALUE);
         if (notEnoughTrainingDataGivenNumberOfValues) {
             return true;
@@ -576,18 +1414,6 @@ public final class TreeBuilder<T extends ClassifierInstance> implements Predicti
         return false;
     }
 
-    private Set<Serializable> getAttrinbuteValues(final Iterable<T> trainingData, final String attribute) {
-        final Set<Serializable> values = Sets.newHashSet();
-        for (T instance : trainingData) {
-            Serializable value = instance.getAttributes().get(attribute);
-            if (value == null) {
-                value = MISSING_VALUE;
-            }
-            values.add(value);
-        }
-        return values;
-    }
-
     private boolean attributeValueOrIntervalOfValuesHasInsufficientStatistics(final ClassificationCounter testValCounts) {
         Preconditions.checkArgument(majorityClassification != null && minorityClassification != null);
         Map<Serializable, Double> counts = testValCounts.getCounts();
@@ -621,20 +1447,170 @@ public final class TreeBuilder<T extends ClassifierInstance> implements Predicti
         return counts.containsKey(majorityClassification) && counts.containsKey(minorityClassification);
     }
 
-    private Pair<? extends Branch, Double> createNumericNode(Node parent, final String attribute, Iterable<T> instances, final double[] splits) {
+    /**
+     * The same test as {@link #attributeValueOrIntervalOfValuesHasInsufficientStatistics(ClassificationCounter)},
+     * over counts by label ordinal.
+     */
+    private boolean attributeValueOrIntervalOfValuesHasInsufficientStatistics(final OrdinalClassificationCounter testValCounts) {
+        final double minorityCount = testValCounts.getCount(minorityLabel);
+        final double majorityCount = testValCounts.getCount(majorityLabel);
+        if (minorityCount > minDiscreteAttributeValueOccurances) {
+            return false;
+        }
+        if (majorityCount > majorityToMinorityRatio * minDiscreteAttributeValueOccurances) {
+            return false;
+        }
+        if (minorityCount > 0 && majorityCount > 0 && majorityCount > 0.6 * majorityToMinorityRatio * minDiscreteAttributeValueOccurances && minorityCount > 0.6 * minDiscreteAttributeValueOccurances) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The same test as {@link #shouldWeIgnoreThisValue(ClassificationCounter)}, over counts by label ordinal.  Only
+     * labels with a non-zero count are considered.
+     */
+    private boolean shouldWeIgnoreThisValue(final OrdinalClassificationCounter testValCounts) {
+        for (int label = 0; label < testValCounts.getNumLabels(); label++) {
+            final double count = testValCounts.getCount(label);
+            if (count != 0 && count < minDiscreteAttributeValueOccurances) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Scores a single split of the node's values of a numeric attribute at a threshold drawn uniformly between their
+     * minimum and maximum, as in extremely randomized trees.
+     */
+    private Pair<? extends Branch, Double> createRandomNumericNode(Node parent, final int attribute, final int[] rows, final int from, final int to, final double majorityLabelWeight) {
+        final double[] values = trainingData.getNumericColumn(attribute);
+        final double[] range = new ShardedAccumulator<double[]>() {
+            @Override
+            double[] accumulate(int from, int to) {
+                final double[] range = {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+                for (int i = from; i < to; i++) {
+                    range[0] = Math.min(range[0], values[rows[i]]);
+                    range[1] = Math.max(range[1], values[rows[i]]);
+                }
+                return range;
+            }
+
+            @Override
+            double[] merge(double[] range, double[] other) {
+                range[0] = Math.min(range[0], other[0]);
+                range[1] = Math.max(range[1], other[1]);
+                return range;
+            }
+        }.accumulateInShards(from, to);
+        if (!(range[0] < range[1])) {
+            return null;
+        }
+        final double threshold = range[0] + MapUtils.random.nextDouble() * (range[1] - range[0]);
+        return createNumericNode(parent, attribute, rows, from, to, new double[]{threshold}, majorityLabelWeight);
+    }
+
+    /**
+     * Scores a single split of a numeric attribute at the upper bound of a bin drawn uniformly from those between
+     * the lowest and highest bins with any weight, as in extremely randomized trees.
+     */
+    private Pair<? extends Branch, Double> createRandomNumericNode(Node parent, final int attribute, final double[] histogram) {
+        final OrdinalClassificationCounter[] countsByBin = OrdinalClassificationCounter.countAllByBucket(histogram, trainingData.getNumLabels());
+        int lowestBin = 0;
+        while (lowestBin < countsByBin.length && countsByBin[lowestBin] == null) {
+            lowestBin++;
+        }
+        int highestBin = countsByBin.length - 1;
+        while (highestBin > lowestBin && countsByBin[highestBin] == null) {
+            highestBin--;
+        }
+        if (highestBin <= lowestBin) {
+            return null;
+        }
+        final int thresholdBin = lowestBin + MapUtils.random.nextInt(highestBin - lowestBin);
+        final OrdinalClassificationCounter[] countsByBucket = {new OrdinalClassificationCounter(trainingData.getNumLabels()), new OrdinalClassificationCounter(trainingData.getNumLabels())};
+        for (int bin = lowestBin; bin <= highestBin; bin++) {
+            if (countsByBin[bin] != null) {
+                countsByBucket[bin <= thresholdBin ? 0 : 1].add(countsByBin[bin]);
+            }
+        }
+        final OrdinalClassificationCounter totals = new OrdinalClassificationCounter(countsByBucket[0]);
+        totals.add(countsByBucket[1]);
+        return createNumericNode(parent, attribute, new double[]{numericBins.getUpperBound(attribute, thresholdBin)}, countsByBucket, totals);
+    }
+
+    private Pair<? extends Branch, Double> createNumericNode(Node parent, final int attribute, final int[] rows, final int from, final int to, final double[] splits, final double majorityLabelWeight) {
+        final double[] thresholds = getDistinctSortedThresholds(splits);
+        final double[] values = trainingData.getNumericColumn(attribute);
+        final int[] labels = trainingData.getLabels();
+        final double[] weights = trainingData.getWeights();
+        final int numLabels = trainingData.getNumLabels();
+        // bucket i holds the instances whose value exceeds exactly i thresholds, so a single pass over the
+        // instances yields the counts on either side of every threshold via a cumulative sum over the buckets
+        final OrdinalClassificationCounter[] countsByBucket = new CountsByBucketAccumulator() {
+            @Override
+            OrdinalClassificationCounter[] accumulate(int from, int to) {
+                final OrdinalClassificationCounter[] countsByBucket = new OrdinalClassificationCounter[thresholds.length + 1];
+                for (int i = 0; i < countsByBucket.length; i++) {
+                    countsByBucket[i] = new OrdinalClassificationCounter(numLabels);
+                }
+                for (int i = from; i < to; i++) {
+                    final int row = rows[i];
+                    countsByBucket[NumericBins.getBin(thresholds, values[row])].addClassification(labels[row], weights[row]);
+                }
+                return countsByBucket;
+            }
+        }.accumulateInShards(from, to);
+        weightMajorityLabel(countsByBucket, majorityLabelWeight);
+        final OrdinalClassificationCounter totals = new OrdinalClassificationCounter(numLabels);
+        for (OrdinalClassificationCounter counts : countsByBucket) {
+            totals.add(counts);
+        }
+        return createNumericNode(parent, attribute, thresholds, countsByBucket, totals);
+    }
+
+    private Pair<? extends Branch, Double> createNumericNode(Node parent, final int attribute, final double[] histogram) {
+        final int numLabels = trainingData.getNumLabels();
+        final int numBins = numericBins.getNumBins(attribute);
+        final double[] thresholds = new double[numBins - 1];
+        final OrdinalClassificationCounter[] countsByBin = new OrdinalClassificationCounter[numBins];
+        final OrdinalClassificationCounter totals = new OrdinalClassificationCounter(numLabels);
+        for (int bin = 0; bin < numBins; bin++) {
+            if (bin < thresholds.length) {
+                thresholds[bin] = numericBins.getUpperBound(attribute, bin);
+            }
+            countsByBin[bin] = new OrdinalClassificationCounter(numLabels);
+            for (int label = 0; label < numLabels; label++) {
+                final double count = histogram[bin * numLabels + label];
+                if (count != 0) {
+                    countsByBin[bin].addClassification(label, count);
+                    totals.addClassification(label, count);
+                }
+            }
+        }
+        return createNumericNode(parent, attribute, thresholds, countsByBin, totals);
+    }
+
+    /**
+     * Sweeps through the thresholds in ascending order, accumulating the out-set counts bucket by bucket in place.
+     *
+     * @param countsByBucket the counts of the instances in (thresholds[i - 1], thresholds[i]] at index i, and
+     *                       above the last threshold at the last index
+     */
+    private Pair<? extends Branch, Double> createNumericNode(Node parent, final int attribute, final double[] thresholds, final OrdinalClassificationCounter[] countsByBucket, final OrdinalClassificationCounter totals) {
         double bestScore = 0;
         double bestThreshold = 0;
-        double lastThreshold = Double.MIN_VALUE;
         double probabilityOfBeingInInset = 0;
-        for (final double threshold : splits) {
-            if (threshold == lastThreshold) {
+        final OrdinalClassificationCounter outClassificationCounts = new OrdinalClassificationCounter(totals.getNumLabels());
+        final OrdinalClassificationCounter inClassificationCounts = new OrdinalClassificationCounter(totals.getNumLabels());
+        for (int i = 0; i < thresholds.length; i++) {
+            if (countsByBucket[i].getTotal() == 0 && i > 0) {
+                // splits the instances the same way as the previous threshold
                 continue;
             }
-            lastThreshold = threshold;
-            Iterable<T> inSet = Iterables.filter(instances, new GreaterThanThresholdPredicate(attribute, threshold));
-            Iterable<T> outSet = Iterables.filter(instances, new LessThanEqualThresholdPredicate(attribute, threshold));
-            ClassificationCounter inClassificationCounts = ClassificationCounter.countAll(inSet);
-            ClassificationCounter outClassificationCounts = ClassificationCounter.countAll(outSet);
+            outClassificationCounts.add(countsByBucket[i]);
+            inClassificationCounts.setToDifference(totals, outClassificationCounts);
             if (binaryClassifications) {
                 if (attributeValueOrIntervalOfValuesHasInsufficientStatistics(inClassificationCounts) || attributeValueOrIntervalOfValuesHasInsufficientStatistics(outClassificationCounts)) {
                     continue;
@@ -644,78 +1620,39 @@ public final class TreeBuilder<T extends ClassifierInstance> implements Predicti
                     continue;
                 }
             }
-            double thisScore = scorer.scoreSplit(inClassificationCounts, outClassificationCounts);
+            double thisScore = scoreSplit(inClassificationCounts, outClassificationCounts);
             if (thisScore > bestScore) {
                 bestScore = thisScore;
-                bestThreshold = threshold;
+                bestThreshold = thresholds[i];
                 probabilityOfBeingInInset = inClassificationCounts.getTotal() / (inClassificationCounts.getTotal() + outClassificationCounts.getTotal());
             }
         }
         if (bestScore == 0) {
             return null;
         }
-        return Pair.with(new NumericBranch(parent, attribute, bestThreshold, probabilityOfBeingInInset), bestScore);
-    }
-
-    public static class AttributeCharacteristics {
-
-        public boolean isNumber = true;
+        return Pair.with(new NumericBranch(parent, trainingData.getAttributeName(attribute), bestThreshold, probabilityOfBeingInInset), bestScore);
     }
 
-    private class GreaterThanThresholdPredicate implements Predicate<T> {
-
-        private final String attribute;
-
-        private final double threshold;
-
-        public GreaterThanThresholdPredicate(String attribute, double threshold) {
-            this.attribute = attribute;
-            this.threshold = threshold;
-        }
-
-        @Override
-        public boolean apply(@Nullable T input) {
-            try {
-                if (input == null) {
-                    return false;
-                }
-                Serializable value = input.getAttributes().get(attribute);
-                if (value == null) {
-                    value = 0;
-                }
-                return ((Number) value).doubleValue() > threshold;
-            } catch (final ClassCastException e) {
-                return false;
-            }
+    /**
+     * Scores a split directly from the counts if the scorer can, otherwise via ClassificationCounters.
+     */
+    private double scoreSplit(OrdinalClassificationCounter inCounts, OrdinalClassificationCounter outCounts) {
+        if (scorer instanceof PrimitiveScorer) {
+            return ((PrimitiveScorer) scorer).scoreSplit(inCounts.getCounts(), inCounts.getTotal(), outCounts.getCounts(), outCounts.getTotal());
         }
+        return scorer.scoreSplit(inCounts.toClassificationCounter(trainingData), outCounts.toClassificationCounter(trainingData));
     }
 
-    private class LessThanEqualThresholdPredicate implements Predicate<T> {
-
-        private final String attribute;
-
-        private final double threshold;
-
-        public LessThanEqualThresholdPredicate(String attribute, double threshold) {
-            this.attribute = attribute;
-            this.threshold = threshold;
-        }
-
-        @Override
-        public boolean apply(@Nullable T input) {
-            try {
-                if (input == null) {
-                    return false;
-                }
-                Serializable value = input.getAttributes().get(attribute);
-                if (value == null) {
-                    value = Double.MIN_VALUE;
-                }
-                return ((Number) value).doubleValue() <= threshold;
-            } catch (final ClassCastException e) {
-                return false;
+    private static double[] getDistinctSortedThresholds(final double[] splits) {
+        final double[] sorted = Arrays.copyOf(splits, splits.length);
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (distinct == 0 || sorted[i] != sorted[distinct - 1]) {
+                sorted[distinct++] = sorted[i];
             }
         }
+        return Arrays.copyOf(sorted, distinct);
     }
 
     private class ScoreValuePair {
@@ -737,4 +1674,38 @@ public final class TreeBuilder<T extends ClassifierInstance> implements Predicti
             return value;
         }
     }
+
+    /**
+     * A node of the tree being grown level-wise that hasn't been made a branch or leaf yet.
+     */
+    private static final class FrontierNode {
+        private final Branch parent;
+        private final boolean trueChildOfParent;
+        private final OrdinalClassificationCounter counts;
+        private final int numRows;
+        private boolean scanned = true;
+        private FrontierNode sibling;
+        private double[][] histograms;
+        private Branch branch;
+        private Node node;
+
+        private FrontierNode(Branch parent, boolean trueChildOfParent, OrdinalClassificationCounter counts, int numRows) {
+            this.parent = parent;
+            this.trueChildOfParent = trueChildOfParent;
+            this.counts = counts;
+            this.numRows = numRows;
+        }
+
+        private void setNode(Node node) {
+            this.node = node;
+            if (parent != null) {
+                if (trueChildOfParent) {
+                    parent.trueChild = node;
+                } else {
+                    parent.falseChild = node;
+                }
+            }
+            histograms = null;
+        }
+    }
 }
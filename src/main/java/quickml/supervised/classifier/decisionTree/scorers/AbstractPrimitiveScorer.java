@@ -0,0 +1,29 @@
+package quickml.supervised.classifier.decisionTree.scorers;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import quickml.supervised.classifier.decisionTree.PrimitiveScorer;
+import quickml.supervised.classifier.decisionTree.tree.ClassificationCounter;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Implements {@link quickml.supervised.classifier.decisionTree.Scorer#scoreSplit(ClassificationCounter, ClassificationCounter)}
+ * in terms of {@link PrimitiveScorer#scoreSplit(double[], double, double[], double)}, by giving each label that
+ * either counter has an ordinal.
+ */
+public abstract class AbstractPrimitiveScorer implements PrimitiveScorer {
+
+    @Override
+    public double scoreSplit(ClassificationCounter a, ClassificationCounter b) {
+        final List<Serializable> labels = Lists.newArrayList(Sets.union(a.allClassifications(), b.allClassifications()));
+        final double[] aCounts = new double[labels.size()];
+        final double[] bCounts = new double[labels.size()];
+        for (int label = 0; label < labels.size(); label++) {
+            aCounts[label] = a.getCount(labels.get(label));
+            bCounts[label] = b.getCount(labels.get(label));
+        }
+        return scoreSplit(aCounts, a.getTotal(), bCounts, b.getTotal());
+    }
+}
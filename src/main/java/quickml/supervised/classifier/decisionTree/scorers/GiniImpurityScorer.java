@@ -1,28 +1,27 @@
 package quickml.supervised.classifier.decisionTree.scorers;
 
-import quickml.supervised.classifier.decisionTree.Scorer;
-import quickml.supervised.classifier.decisionTree.tree.ClassificationCounter;
-
-import java.io.Serializable;
-import java.util.Map;
-
 /**
  * Created by chrisreeves on 6/24/14.
  */
-public class GiniImpurityScorer implements Scorer{
+public class GiniImpurityScorer extends AbstractPrimitiveScorer {
     @Override
-    public double scoreSplit(ClassificationCounter a, ClassificationCounter b) {
-        ClassificationCounter parent = ClassificationCounter.merge(a, b);
-        double parentGiniIndex = getGiniIndex(parent);
-        double aGiniIndex = getGiniIndex(a) * a.getTotal() / parent.getTotal() ;
-        double bGiniIndex = getGiniIndex(b) * b.getTotal() / parent.getTotal();
+    public double scoreSplit(double[] aCounts, double aTotal, double[] bCounts, double bTotal) {
+        final double parentTotal = aTotal + bTotal;
+        double parentSum = 0.0d;
+        for (int label = 0; label < aCounts.length; label++) {
+            double error = (parentTotal > 0) ? (aCounts[label] + bCounts[label]) / parentTotal : 0;
+            parentSum += error * error;
+        }
+        double parentGiniIndex = 1.0d - parentSum;
+        double aGiniIndex = getGiniIndex(aCounts, aTotal) * aTotal / parentTotal;
+        double bGiniIndex = getGiniIndex(bCounts, bTotal) * bTotal / parentTotal;
         return parentGiniIndex - aGiniIndex - bGiniIndex;
     }
 
-    private double getGiniIndex(ClassificationCounter cc) {
+    private double getGiniIndex(double[] counts, double total) {
         double sum = 0.0d;
-        for (Map.Entry<Serializable, Double> e : cc.getCounts().entrySet()) {
-            double error = (cc.getTotal() > 0) ? e.getValue() / cc.getTotal() : 0;
+        for (double count : counts) {
+            double error = (total > 0) ? count / total : 0;
             sum += error * error;
         }
         return 1.0d - sum;
@@ -1,35 +1,41 @@
 package quickml.supervised.classifier.decisionTree.scorers;
 
-import quickml.supervised.classifier.decisionTree.Scorer;
-import quickml.supervised.classifier.decisionTree.tree.ClassificationCounter;
-
-import java.io.Serializable;
-import java.util.Map;
-
 /**
  * Created by chrisreeves on 6/24/14.
  */
-public class InformationGainScorer implements Scorer {
+public class InformationGainScorer extends AbstractPrimitiveScorer {
 
     @Override
-    public double scoreSplit(ClassificationCounter a, ClassificationCounter b) {
-        double parentEntropy = calculateEntropy(ClassificationCounter.merge(a, b));
-        double aEntropy = calculateEntropy(a);
-        double bEntropy = calculateEntropy(b);
-        return calculateGain(parentEntropy, aEntropy, bEntropy, a.getTotal(), b.getTotal());
+    public double scoreSplit(double[] aCounts, double aTotal, double[] bCounts, double bTotal) {
+        final double parentTotal = aTotal + bTotal;
+        double parentEntropy = 0;
+        for (int label = 0; label < aCounts.length; label++) {
+            parentEntropy += getEntropyTerm(aCounts[label] + bCounts[label], parentTotal);
+        }
+        double aEntropy = calculateEntropy(aCounts, aTotal);
+        double bEntropy = calculateEntropy(bCounts, bTotal);
+        return calculateGain(parentEntropy, aEntropy, bEntropy, aTotal, bTotal);
     }
 
-    private double calculateEntropy(ClassificationCounter cc) {
+    private double calculateEntropy(double[] counts, double total) {
         double entropy = 0;
-
-        for (Map.Entry<Serializable, Double> e : cc.getCounts().entrySet()) {
-            double error = (cc.getTotal() > 0) ? e.getValue() / cc.getTotal() : 0;
-            entropy += -error * (Math.log(error) / Math.log(2));
+        for (double count : counts) {
+            entropy += getEntropyTerm(count, total);
         }
-
         return entropy;
     }
 
+    /**
+     * @return the contribution of a label with the given count to the entropy, taking 0 * log(0) to be 0
+     */
+    private double getEntropyTerm(double count, double total) {
+        if (count == 0) {
+            return 0;
+        }
+        double error = (total > 0) ? count / total : 0;
+        return -error * (Math.log(error) / Math.log(2));
+    }
+
     private double calculateGain(double rootEntropy, double aEntropy, double bEntropy, double aSize, double bSize) {
         double aAdjustedEntropy = (aSize / (aSize+bSize)) * aEntropy;
         double bAdjustedEntropy = (bSize / (aSize+bSize)) * bEntropy;
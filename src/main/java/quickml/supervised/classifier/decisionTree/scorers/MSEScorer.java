@@ -1,18 +1,12 @@
 package quickml.supervised.classifier.decisionTree.scorers;
 
-import quickml.supervised.classifier.decisionTree.Scorer;
-import quickml.supervised.classifier.decisionTree.tree.ClassificationCounter;
-
-import java.io.Serializable;
-import java.util.Map;
-
 /**
  * A Scorer intended to estimate the impact on the Mean of the Squared Error (MSE)
  * of a branch existing versus not existing.  The value returned is the MSE
  * without the branch minus the MSE with the branch (so higher is better, as
  * is required by the scoreSplit() interface.
  */
-public class MSEScorer implements Scorer {
+public class MSEScorer extends AbstractPrimitiveScorer {
     private final double crossValidationInstanceCorrection;
 
     public MSEScorer(CrossValidationCorrection crossValidationCorrection) {
@@ -24,23 +18,31 @@ public class MSEScorer implements Scorer {
     }
 
     @Override
-    public double scoreSplit(final ClassificationCounter a, final ClassificationCounter b) {
-        ClassificationCounter parent = ClassificationCounter.merge(a, b);
-        double parentMSE = getTotalError(parent) / parent.getTotal();
-        double splitMSE = (getTotalError(a) + getTotalError(b)) / (a.getTotal() + b.getTotal());
+    public double scoreSplit(double[] aCounts, double aTotal, double[] bCounts, double bTotal) {
+        final double parentTotal = aTotal + bTotal;
+        double parentError = 0;
+        for (int label = 0; label < aCounts.length; label++) {
+            parentError += getError(aCounts[label] + bCounts[label], parentTotal);
+        }
+        double parentMSE = parentError / parentTotal;
+        double splitMSE = (getTotalError(aCounts, aTotal) + getTotalError(bCounts, bTotal)) / (aTotal + bTotal);
         return parentMSE - splitMSE;
     }
 
-    private double getTotalError(ClassificationCounter cc) {
+    private double getTotalError(double[] counts, double total) {
         double totalError = 0;
-        for (Map.Entry<Serializable, Double> e : cc.getCounts().entrySet()) {
-            double error = (cc.getTotal()>0) ? 1.0 - e.getValue()/cc.getTotal() : 0;
-            double errorSquared = error*error;
-            totalError += errorSquared * e.getValue();
+        for (double count : counts) {
+            totalError += getError(count, total);
         }
         return totalError;
     }
 
+    private double getError(double count, double total) {
+        double error = (total > 0) ? 1.0 - count / total : 0;
+        double errorSquared = error * error;
+        return errorSquared * count;
+    }
+
     public enum CrossValidationCorrection {
         TRUE, FALSE
     }
@@ -1,12 +1,6 @@
 package quickml.supervised.classifier.decisionTree.scorers;
 
-import com.google.common.collect.Sets;
-import quickml.supervised.classifier.decisionTree.Scorer;
-import quickml.supervised.classifier.decisionTree.tree.ClassificationCounter;
-
-import java.io.Serializable;
-
-public final class SplitDiffScorer implements Scorer {
+public final class SplitDiffScorer extends AbstractPrimitiveScorer {
 
 	/*
 	 * The general idea here is that a good split is one where the proportions
@@ -27,13 +21,17 @@ public final class SplitDiffScorer implements Scorer {
 	 */
 
     @Override
-	public double scoreSplit(final ClassificationCounter a, final ClassificationCounter b) {
+	public double scoreSplit(final double[] aCounts, final double aTotal, final double[] bCounts, final double bTotal) {
 		double score = 0;
-		for (final Serializable value : Sets.union(a.allClassifications(), b.allClassifications())) {
-			final double aProp = (double) a.getCount(value) / a.getTotal();
-			final double bProp = (double) b.getCount(value) / b.getTotal();
-
-			score += Math.abs(aProp - bProp) * Math.min(a.getTotal(), b.getTotal());
+		for (int label = 0; label < aCounts.length; label++) {
+			if (aCounts[label] == 0 && bCounts[label] == 0) {
+				// in neither split
+				continue;
+			}
+			final double aProp = aCounts[label] / aTotal;
+			final double bProp = bCounts[label] / bTotal;
+
+			score += Math.abs(aProp - bProp) * Math.min(aTotal, bTotal);
 		}
 		return score;
 	}
@@ -26,6 +26,14 @@ public abstract class Branch extends Node {
 
 	public abstract boolean decide(Map<String, Serializable> attributes);
 
+    /**
+     * @return the probability of the true child that {@link #getProbabilityWithoutAttributes} weights it by when
+     * this branch's attribute is ignored
+     */
+    public double getProbabilityOfTrueChild() {
+        return probabilityOfTrueChild;
+    }
+
 	@Override
 	public int size() {
 		return 1 + trueChild.size() + falseChild.size();
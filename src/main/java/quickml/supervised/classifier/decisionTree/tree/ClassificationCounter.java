@@ -6,6 +6,7 @@ import com.google.common.collect.Ordering;
 import org.javatuples.Pair;
 import quickml.collections.ValueSummingMap;
 import quickml.data.ClassifierInstance;
+import quickml.data.ColumnarTrainingData;
 
 import java.io.Serializable;
 import java.util.*;
@@ -72,6 +73,27 @@ public class ClassificationCounter implements Serializable {
         return Pair.with(totals, result);
     }
 
+    /**
+     * @param countersByCode the counts of each code of a categorical attribute, null for codes without any
+     */
+    public static Pair<ClassificationCounter, Map<Serializable, ClassificationCounter>> countAllByAttributeValues(
+            final ColumnarTrainingData trainingData, final int attribute, final OrdinalClassificationCounter[] countersByCode) {
+        final OrdinalClassificationCounter totals = new OrdinalClassificationCounter(trainingData.getNumLabels());
+        for (OrdinalClassificationCounter counter : countersByCode) {
+            if (counter != null) {
+                totals.add(counter);
+            }
+        }
+
+        final Map<Serializable, ClassificationCounter> result = Maps.newHashMap();
+        for (int code = 0; code < countersByCode.length; code++) {
+            if (countersByCode[code] != null) {
+                result.put(code == ColumnarTrainingData.MISSING_CODE ? MISSING_VALUE : trainingData.getCategoricalValue(attribute, code), countersByCode[code].toClassificationCounter(trainingData));
+            }
+        }
+        return Pair.with(totals.toClassificationCounter(trainingData), result);
+    }
+
     public static Pair<ClassificationCounter, List<AttributeValueWithClassificationCounter>> getSortedListOfAttributeValuesWithClassificationCounters(
             final Iterable<? extends ClassifierInstance> instances, final String attribute, final Serializable minorityClassification) {
 
@@ -3,7 +3,9 @@ package quickml.supervised.classifier.decisionTree.tree;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterables;
 import quickml.data.AttributesMap;
+import quickml.data.ClassificationDictionary;
 import quickml.data.ClassifierInstance;
+import quickml.data.PredictionMap;
 
 import java.io.IOException;
 import java.io.Serializable;
@@ -35,6 +37,8 @@ public class Leaf extends Node {
 
     protected transient volatile Map.Entry<Serializable, Double> bestClassificationEntry = null;
 
+    private transient volatile DictionaryProbabilities dictionaryProbabilities = null;
+
 
     public Leaf(Node parent, final Iterable<? extends ClassifierInstance> instances, final int depth) {
         this(parent, ClassificationCounter.countAll(instances), depth);
@@ -117,6 +121,57 @@ public class Leaf extends Node {
         return probability;
     }
 
+    /**
+     * Adds the probability of each classification this leaf has seen to sums, which must be backed by a
+     * {@link ClassificationDictionary} that has all of them.  The probabilities are numbered by the dictionary
+     * once and cached, so this neither allocates nor hashes classifications unless it is called with a dictionary
+     * that numbers them differently than the last one did.  Models should share a dictionary (as a
+     * {@link quickml.supervised.classifier.randomForest.RandomForest} does with its trees) so that the cache is
+     * found by identity.
+     */
+    public void addProbabilities(PredictionMap sums) {
+        final ClassificationDictionary dictionary = sums.getDictionary();
+        Preconditions.checkArgument(dictionary != null, "The sums must be backed by a classification dictionary");
+        final DictionaryProbabilities cached = getDictionaryProbabilities(dictionary);
+        for (int i = 0; i < cached.indices.length; i++) {
+            sums.addProbability(cached.indices[i], cached.probabilities[i]);
+        }
+    }
+
+    /**
+     * Adds the probability of each classification this leaf has seen to sums[offset + its index in dictionary],
+     * from the same cache as {@link #addProbabilities(PredictionMap)}.
+     */
+    public void addProbabilities(ClassificationDictionary dictionary, double[] sums, int offset) {
+        final DictionaryProbabilities cached = getDictionaryProbabilities(dictionary);
+        for (int i = 0; i < cached.indices.length; i++) {
+            sums[offset + cached.indices[i]] += cached.probabilities[i];
+        }
+    }
+
+    /**
+     * @return the probability of the classification at index in dictionary, from the same cache as
+     * {@link #addProbabilities(PredictionMap)}
+     */
+    public double getProbability(ClassificationDictionary dictionary, int index) {
+        final DictionaryProbabilities cached = getDictionaryProbabilities(dictionary);
+        for (int i = 0; i < cached.indices.length; i++) {
+            if (cached.indices[i] == index) {
+                return cached.probabilities[i];
+            }
+        }
+        return 0;
+    }
+
+    private DictionaryProbabilities getDictionaryProbabilities(ClassificationDictionary dictionary) {
+        DictionaryProbabilities cached = dictionaryProbabilities;
+        if (cached == null || (cached.dictionary != dictionary && !cached.dictionary.equals(dictionary))) {
+            cached = new DictionaryProbabilities(this, dictionary);
+            dictionaryProbabilities = cached;
+        }
+        return cached;
+    }
+
     public double getProbabilityWithoutAttributes(AttributesMap attributes, Serializable classification, Set<String> attribute) {
         return getProbability(classification);
     }
@@ -149,4 +204,23 @@ public class Leaf extends Node {
         result = 31 * result + classificationCounts.hashCode();
         return result;
     }
+
+    private static class DictionaryProbabilities {
+        final ClassificationDictionary dictionary;
+        final int[] indices;
+        final double[] probabilities;
+
+        DictionaryProbabilities(Leaf leaf, ClassificationDictionary dictionary) {
+            this.dictionary = dictionary;
+            final Set<Serializable> classifications = leaf.getClassifications();
+            this.indices = new int[classifications.size()];
+            this.probabilities = new double[classifications.size()];
+            int i = 0;
+            for (Serializable classification : classifications) {
+                indices[i] = dictionary.indexOf(classification);
+                Preconditions.checkArgument(indices[i] >= 0, "%s isn't in the classification dictionary", classification);
+                probabilities[i++] = leaf.getProbability(classification);
+            }
+        }
+    }
 }
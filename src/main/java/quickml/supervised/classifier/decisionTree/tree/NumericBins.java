@@ -0,0 +1,238 @@
+package quickml.supervised.classifier.decisionTree.tree;
+
+import com.google.common.base.Preconditions;
+import quickml.data.ColumnarTrainingData;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * The numeric attributes of some {@link ColumnarTrainingData}, discretized once into at most maxBins bins per
+ * attribute so that tree nodes can find numeric splits from per-bin classification counts (histograms) rather
+ * than by rescanning attribute values.
+ * <p/>
+ * Bin b of an attribute holds the values in (upperBound[b - 1], upperBound[b]], and the last bin holds everything
+ * above the last upper bound, so a NumericBranch with upperBound[b] as its threshold sends bins above b down its
+ * true child.  Bin bounds are weighted quantiles of the attribute's values, or every distinct value if there are at most
+ * maxBins of them.
+ * <p/>
+ * A histogram is a double[] of weights indexed by bin * numLabels + label ordinal.
+ * <p/>
+ * The bins of every row take a byte per numeric attribute, and can be kept in a memory-mapped file rather than on
+ * the heap, see {@link #create(ColumnarTrainingData, int, File)}.
+ */
+public class NumericBins {
+    public static final int MAX_BINS = 256;
+
+    /**
+     * Bin bounds are estimated from at most this many evenly spaced rows.
+     */
+    private static final int MAX_ROWS_TO_ESTIMATE_BOUNDS_FROM = 100000;
+
+    private final ColumnarTrainingData trainingData;
+    private final double[][] upperBounds;
+    private final ByteBuffer[] binsByRow;
+
+    private NumericBins(ColumnarTrainingData trainingData, double[][] upperBounds, ByteBuffer[] binsByRow) {
+        this.trainingData = trainingData;
+        this.upperBounds = upperBounds;
+        this.binsByRow = binsByRow;
+    }
+
+    public static NumericBins create(ColumnarTrainingData trainingData, int maxBins) {
+        Preconditions.checkArgument(maxBins > 1 && maxBins <= MAX_BINS, "maxBins must be between 2 and %s", MAX_BINS);
+        final double[][] upperBounds = new double[trainingData.getNumAttributes()][];
+        final ByteBuffer[] binsByRow = new ByteBuffer[trainingData.getNumAttributes()];
+        for (int attribute = 0; attribute < upperBounds.length; attribute++) {
+            if (trainingData.isNumeric(attribute)) {
+                binsByRow[attribute] = ByteBuffer.allocate(trainingData.size());
+                upperBounds[attribute] = fillBins(trainingData.getNumericColumnBuffer(attribute), trainingData.getWeightBuffer(), maxBins, binsByRow[attribute]);
+            }
+        }
+        return new NumericBins(trainingData, upperBounds, binsByRow);
+    }
+
+    /**
+     * Bins the numeric attributes of trainingData into a file, which is memory-mapped rather than loaded, so that
+     * the bins of training data that doesn't fit on the heap (see {@link ColumnarTrainingData#map}) don't need to
+     * either.  Each numeric column is read through once.  The file is overwritten.
+     */
+    public static NumericBins create(ColumnarTrainingData trainingData, int maxBins, File file) throws IOException {
+        Preconditions.checkArgument(maxBins > 1 && maxBins <= MAX_BINS, "maxBins must be between 2 and %s", MAX_BINS);
+        final double[][] upperBounds = new double[trainingData.getNumAttributes()][];
+        final ByteBuffer[] binsByRow = new ByteBuffer[trainingData.getNumAttributes()];
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            randomAccessFile.setLength(0);
+            long offset = 0;
+            for (int attribute = 0; attribute < upperBounds.length; attribute++) {
+                if (trainingData.isNumeric(attribute)) {
+                    binsByRow[attribute] = channel.map(FileChannel.MapMode.READ_WRITE, offset, trainingData.size());
+                    upperBounds[attribute] = fillBins(trainingData.getNumericColumnBuffer(attribute), trainingData.getWeightBuffer(), maxBins, binsByRow[attribute]);
+                    offset += trainingData.size();
+                }
+            }
+        }
+        return new NumericBins(trainingData, upperBounds, binsByRow);
+    }
+
+    /**
+     * @return the upper bounds of the bins of values, having put the bin of every value in bins
+     */
+    private static double[] fillBins(DoubleBuffer values, DoubleBuffer weights, int maxBins, ByteBuffer bins) {
+        final double[] upperBounds = getUpperBounds(values, weights, maxBins);
+        for (int row = 0; row < values.limit(); row++) {
+            bins.put(row, (byte) getBin(upperBounds, values.get(row)));
+        }
+        return upperBounds;
+    }
+
+    private static double[] getUpperBounds(DoubleBuffer values, DoubleBuffer weights, int maxBins) {
+        final int stride = Math.max(1, values.limit() / MAX_ROWS_TO_ESTIMATE_BOUNDS_FROM);
+        final double[] sample = new double[(values.limit() + stride - 1) / stride];
+        final double[] sampleWeights = new double[sample.length];
+        double totalWeight = 0;
+        for (int i = 0; i < sample.length; i++) {
+            sample[i] = values.get(i * stride);
+            sampleWeights[i] = weights.get(i * stride);
+            totalWeight += sampleWeights[i];
+        }
+        QuantileSketch.sort(sample, sampleWeights, sample.length);
+        int distinctValues = 1;
+        for (int i = 1; i < sample.length; i++) {
+            if (sample[i] != sample[i - 1]) {
+                distinctValues++;
+            }
+        }
+        final double[] upperBounds = new double[Math.min(distinctValues, maxBins) - 1];
+        int numUpperBounds = 0;
+        if (distinctValues <= maxBins) {
+            // a bin per distinct value, the largest one going in the last bin
+            for (int i = 1; i < sample.length; i++) {
+                if (sample[i] != sample[i - 1]) {
+                    upperBounds[numUpperBounds++] = sample[i - 1];
+                }
+            }
+            return upperBounds;
+        }
+        // the bound of a bin is the first value whose cumulative weight exceeds the bin's share of the total weight
+        double cumulativeWeight = 0;
+        int i = 0;
+        for (int bin = 1; bin < maxBins; bin++) {
+            while (i < sample.length - 1 && cumulativeWeight + sampleWeights[i] <= bin * totalWeight / maxBins) {
+                cumulativeWeight += sampleWeights[i++];
+            }
+            final double quantile = sample[i];
+            if (numUpperBounds == 0 || quantile != upperBounds[numUpperBounds - 1]) {
+                upperBounds[numUpperBounds++] = quantile;
+            }
+        }
+        return Arrays.copyOf(upperBounds, numUpperBounds);
+    }
+
+    /**
+     * @return the number of upperBounds strictly below value, ie. the bin the value belongs in
+     */
+    public static int getBin(final double[] sortedUpperBounds, final double value) {
+        final int index = Arrays.binarySearch(sortedUpperBounds, value);
+        return index >= 0 ? index : -(index + 1);
+    }
+
+    /**
+     * @return the bin of every row for an attribute, as unsigned bytes, which must not be modified
+     */
+    public ByteBuffer getBinBuffer(int attribute) {
+        return binsByRow[attribute].duplicate();
+    }
+
+    /**
+     * @return the bin that value belongs in for an attribute
+     */
+    public int getBin(int attribute, double value) {
+        return getBin(upperBounds[attribute], value);
+    }
+
+    public int getNumBins(int attribute) {
+        return upperBounds[attribute].length + 1;
+    }
+
+    /**
+     * @return the threshold of a numeric branch that separates bins up to and including bin from the bins above it
+     */
+    public double getUpperBound(int attribute, int bin) {
+        return upperBounds[attribute][bin];
+    }
+
+    /**
+     * @return a histogram for every numeric attribute over rows[from] to rows[to - 1], indexed by attribute id (null
+     * for categorical attributes)
+     */
+    public double[][] createHistograms(int[] rows, int from, int to) {
+        final int[] attributes = new int[binsByRow.length];
+        for (int attribute = 0; attribute < attributes.length; attribute++) {
+            attributes[attribute] = attribute;
+        }
+        return createHistograms(rows, from, to, attributes);
+    }
+
+    /**
+     * @return a histogram for each numeric attribute of attributes over rows[from] to rows[to - 1], indexed by
+     * attribute id (null for categorical attributes and those not in attributes)
+     */
+    public double[][] createHistograms(int[] rows, int from, int to, int[] attributes) {
+        final int numLabels = trainingData.getNumLabels();
+        final int[] labels = trainingData.getLabels();
+        final double[] weights = trainingData.getWeights();
+        final double[][] histograms = new double[binsByRow.length][];
+        for (int attribute : attributes) {
+            final ByteBuffer bins = binsByRow[attribute];
+            if (bins == null) {
+                continue;
+            }
+            final double[] histogram = new double[getNumBins(attribute) * numLabels];
+            for (int i = from; i < to; i++) {
+                final int row = rows[i];
+                histogram[(bins.get(row) & 0xFF) * numLabels + labels[row]] += weights[row];
+            }
+            histograms[attribute] = histogram;
+        }
+        return histograms;
+    }
+
+    /**
+     * Adds otherHistograms, over other rows, to histograms, which then cover the rows of both.
+     */
+    public static void add(double[][] histograms, double[][] otherHistograms) {
+        for (int attribute = 0; attribute < histograms.length; attribute++) {
+            final double[] histogram = histograms[attribute];
+            if (histogram == null) {
+                continue;
+            }
+            final double[] otherHistogram = otherHistograms[attribute];
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] += otherHistogram[i];
+            }
+        }
+    }
+
+    /**
+     * Turns the histograms of a node into those of one of its children, given the histograms of the other child.
+     */
+    public static void subtract(double[][] parentHistograms, double[][] childHistograms) {
+        for (int attribute = 0; attribute < parentHistograms.length; attribute++) {
+            final double[] parentHistogram = parentHistograms[attribute];
+            if (parentHistogram == null) {
+                continue;
+            }
+            final double[] childHistogram = childHistograms[attribute];
+            for (int i = 0; i < parentHistogram.length; i++) {
+                parentHistogram[i] -= childHistogram[i];
+            }
+        }
+    }
+}
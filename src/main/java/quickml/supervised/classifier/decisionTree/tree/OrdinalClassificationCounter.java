@@ -0,0 +1,201 @@
+package quickml.supervised.classifier.decisionTree.tree;
+
+import com.google.common.base.Preconditions;
+import quickml.data.ColumnarTrainingData;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * A mutable count of classifications backed by a double[] indexed by label ordinal, the ordinals being those of the
+ * label dictionary of some {@link ColumnarTrainingData}.  Unlike {@link ClassificationCounter}, add and subtract
+ * work in place, so a sweep through candidate splits can reuse the same counters rather than allocating new ones at
+ * every step.
+ */
+public final class OrdinalClassificationCounter {
+    private final double[] counts;
+    private double total;
+
+    public OrdinalClassificationCounter(int numLabels) {
+        this.counts = new double[numLabels];
+    }
+
+    public OrdinalClassificationCounter(OrdinalClassificationCounter other) {
+        this.counts = Arrays.copyOf(other.counts, other.counts.length);
+        this.total = other.total;
+    }
+
+    /**
+     * Counts the labels of every row.
+     */
+    public static OrdinalClassificationCounter countAll(final ColumnarTrainingData trainingData) {
+        final OrdinalClassificationCounter result = new OrdinalClassificationCounter(trainingData.getNumLabels());
+        final IntBuffer labels = trainingData.getLabelBuffer();
+        final DoubleBuffer weights = trainingData.getWeightBuffer();
+        for (int row = 0; row < trainingData.size(); row++) {
+            result.addClassification(labels.get(row), weights.get(row));
+        }
+        return result;
+    }
+
+    /**
+     * Counts the labels of rows[from] to rows[to - 1].
+     */
+    public static OrdinalClassificationCounter countAll(final ColumnarTrainingData trainingData, final int[] rows, final int from, final int to) {
+        final OrdinalClassificationCounter result = new OrdinalClassificationCounter(trainingData.getNumLabels());
+        final int[] labels = trainingData.getLabels();
+        final double[] weights = trainingData.getWeights();
+        for (int i = from; i < to; i++) {
+            result.addClassification(labels[rows[i]], weights[rows[i]]);
+        }
+        return result;
+    }
+
+    /**
+     * Counts the labels of rows[from] to rows[to - 1] separately for each code of a categorical attribute.
+     *
+     * @return counters indexed by code, null for codes that none of the rows have
+     */
+    public static OrdinalClassificationCounter[] countAllByCode(final ColumnarTrainingData trainingData, final int attribute, final int[] rows, final int from, final int to) {
+        final int[] codes = trainingData.getCategoricalColumn(attribute);
+        final int[] labels = trainingData.getLabels();
+        final double[] weights = trainingData.getWeights();
+        final OrdinalClassificationCounter[] countersByCode = new OrdinalClassificationCounter[trainingData.getNumCategoricalValues(attribute)];
+        for (int i = from; i < to; i++) {
+            final int row = rows[i];
+            OrdinalClassificationCounter counter = countersByCode[codes[row]];
+            if (counter == null) {
+                counter = new OrdinalClassificationCounter(trainingData.getNumLabels());
+                countersByCode[codes[row]] = counter;
+            }
+            counter.addClassification(labels[row], weights[row]);
+        }
+        return countersByCode;
+    }
+
+    /**
+     * Splits a histogram, a double[] of weights indexed by bucket * numLabels + label ordinal, into counts by bucket.
+     *
+     * @return counters indexed by bucket, null for buckets without any weight
+     */
+    public static OrdinalClassificationCounter[] countAllByBucket(final double[] histogram, final int numLabels) {
+        final OrdinalClassificationCounter[] countersByBucket = new OrdinalClassificationCounter[histogram.length / numLabels];
+        for (int bucket = 0; bucket < countersByBucket.length; bucket++) {
+            for (int label = 0; label < numLabels; label++) {
+                final double count = histogram[bucket * numLabels + label];
+                if (count != 0) {
+                    if (countersByBucket[bucket] == null) {
+                        countersByBucket[bucket] = new OrdinalClassificationCounter(numLabels);
+                    }
+                    countersByBucket[bucket].addClassification(label, count);
+                }
+            }
+        }
+        return countersByBucket;
+    }
+
+    /**
+     * Adds others to counters element by element, where either may be null for no counts, eg. to merge the
+     * results of {@link #countAllByCode} over two ranges of rows.
+     */
+    public static void addAll(final OrdinalClassificationCounter[] counters, final OrdinalClassificationCounter[] others) {
+        Preconditions.checkArgument(others.length == counters.length, "Counter arrays have different lengths");
+        for (int i = 0; i < counters.length; i++) {
+            if (counters[i] == null) {
+                counters[i] = others[i];
+            } else if (others[i] != null) {
+                counters[i].add(others[i]);
+            }
+        }
+    }
+
+    public void addClassification(int label, double weight) {
+        counts[label] += weight;
+        total += weight;
+    }
+
+    /**
+     * Adds the counts of other to these.
+     */
+    public void add(OrdinalClassificationCounter other) {
+        checkSameLabels(other);
+        for (int label = 0; label < counts.length; label++) {
+            counts[label] += other.counts[label];
+        }
+        total += other.total;
+    }
+
+    /**
+     * Subtracts the counts of other from these.
+     */
+    public void subtract(OrdinalClassificationCounter other) {
+        checkSameLabels(other);
+        for (int label = 0; label < counts.length; label++) {
+            counts[label] -= other.counts[label];
+        }
+        total -= other.total;
+    }
+
+    /**
+     * Sets these counts to those of a minus those of b.
+     */
+    public void setToDifference(OrdinalClassificationCounter a, OrdinalClassificationCounter b) {
+        checkSameLabels(a);
+        checkSameLabels(b);
+        for (int label = 0; label < counts.length; label++) {
+            counts[label] = a.counts[label] - b.counts[label];
+        }
+        total = a.total - b.total;
+    }
+
+    /**
+     * Multiplies the count of a label by factor, as if the weight of every instance with it had been.
+     */
+    public void scale(int label, double factor) {
+        total += counts[label] * (factor - 1);
+        counts[label] *= factor;
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+        total = 0;
+    }
+
+    public double getCount(int label) {
+        return counts[label];
+    }
+
+    public double getTotal() {
+        return total;
+    }
+
+    public int getNumLabels() {
+        return counts.length;
+    }
+
+    /**
+     * @return the counts indexed by label ordinal, which are the internal storage of this counter and must not be
+     * modified
+     */
+    public double[] getCounts() {
+        return counts;
+    }
+
+    /**
+     * @return a {@link ClassificationCounter} with the labels that these counts are non-zero for
+     */
+    public ClassificationCounter toClassificationCounter(ColumnarTrainingData trainingData) {
+        final ClassificationCounter result = new ClassificationCounter();
+        for (int label = 0; label < counts.length; label++) {
+            if (counts[label] != 0) {
+                result.addClassification(trainingData.getLabelValue(label), counts[label]);
+            }
+        }
+        return result;
+    }
+
+    private void checkSameLabels(OrdinalClassificationCounter other) {
+        Preconditions.checkArgument(other.counts.length == counts.length, "Counters have different numbers of labels");
+    }
+}
@@ -0,0 +1,178 @@
+package quickml.supervised.classifier.decisionTree.tree;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+
+/**
+ * A mergeable sketch of a stream of weighted doubles that can estimate its weighted quantiles, kept in primitive
+ * arrays.
+ * <p/>
+ * Values go into a buffer of up to capacity values.  When a buffer fills up it is sorted and every other value
+ * (alternately the odd and the even ones, so that the errors cancel out) is promoted to the buffer of the next
+ * level, carrying the weight of its neighbour as well as its own, so a value of unit weight at a level stands for
+ * twice as many of the original values as one at the level below.  The sketch is exact until capacity
+ * values have been added, and after n values the rank of an estimated quantile is off by at most about
+ * n * log2(n / capacity) / capacity.  Sketches of different parts of a stream can be built separately (eg. on
+ * different threads) and merged.  Compaction is deterministic, so the same values added and merged in the same
+ * order always give the same quantiles.
+ */
+public final class QuantileSketch {
+    private final int capacity;
+    private double[][] levels = new double[0][];
+    private double[][] levelWeights = new double[0][];
+    private int[] levelSizes = new int[0];
+    private boolean[] promoteOddValues = new boolean[0];
+    private long count;
+
+    /**
+     * @param capacity the number of values each level holds before being compacted, which trades space for
+     *                 accuracy
+     */
+    public QuantileSketch(int capacity) {
+        Preconditions.checkArgument(capacity >= 2, "capacity must be at least 2");
+        this.capacity = capacity;
+    }
+
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    /**
+     * Adds a value that stands for weight values, so that adding a value with a weight of n gives the same
+     * quantiles as adding it n times while the sketch is exact.
+     */
+    public void add(double value, double weight) {
+        addToLevel(0, value, weight);
+        count++;
+    }
+
+    /**
+     * Adds the values that other has seen to this sketch, leaving other as it was.
+     */
+    public void merge(QuantileSketch other) {
+        Preconditions.checkArgument(other.capacity == capacity, "Can't merge sketches of different capacities");
+        for (int level = 0; level < other.levels.length; level++) {
+            final double[] values = other.levels[level];
+            final double[] weights = other.levelWeights[level];
+            for (int i = 0; i < other.levelSizes[level]; i++) {
+                addToLevel(level, values[i], weights[i]);
+            }
+        }
+        count += other.count;
+    }
+
+    /**
+     * @return the number of values added to this sketch and the sketches merged into it
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * @return estimates of the numQuantiles quantiles that divide the values into numQuantiles + 1 groups of equal
+     * weight, in ascending order
+     */
+    public double[] getQuantiles(int numQuantiles) {
+        Preconditions.checkState(count > 0, "Can't estimate the quantiles of no values");
+        double totalWeight = 0;
+        for (int level = 0; level < levels.length; level++) {
+            sort(levels[level], levelWeights[level], levelSizes[level]);
+            for (int i = 0; i < levelSizes[level]; i++) {
+                totalWeight += levelWeights[level][i];
+            }
+        }
+        // walk through the values of all levels in ascending order, as in a merge of sorted lists
+        final int[] positions = new int[levels.length];
+        final double[] quantiles = new double[numQuantiles];
+        double cumulativeWeight = 0;
+        int quantile = 0;
+        while (quantile < numQuantiles) {
+            int smallestLevel = -1;
+            for (int level = 0; level < levels.length; level++) {
+                if (positions[level] < levelSizes[level] && (smallestLevel < 0 || levels[level][positions[level]] < levels[smallestLevel][positions[smallestLevel]])) {
+                    smallestLevel = level;
+                }
+            }
+            cumulativeWeight += levelWeights[smallestLevel][positions[smallestLevel]];
+            final double value = levels[smallestLevel][positions[smallestLevel]++];
+            // quantile q is the first value whose cumulative weight exceeds its rank
+            while (quantile < numQuantiles && cumulativeWeight > (quantile + 1) * totalWeight / (numQuantiles + 1)) {
+                quantiles[quantile++] = value;
+            }
+        }
+        return quantiles;
+    }
+
+    private void addToLevel(int level, double value, double weight) {
+        if (level == levels.length) {
+            levels = Arrays.copyOf(levels, level + 1);
+            levels[level] = new double[capacity];
+            levelWeights = Arrays.copyOf(levelWeights, level + 1);
+            levelWeights[level] = new double[capacity];
+            levelSizes = Arrays.copyOf(levelSizes, level + 1);
+            promoteOddValues = Arrays.copyOf(promoteOddValues, level + 1);
+        }
+        levels[level][levelSizes[level]] = value;
+        levelWeights[level][levelSizes[level]++] = weight;
+        if (levelSizes[level] == capacity) {
+            compact(level);
+        }
+    }
+
+    private void compact(int level) {
+        final double[] values = levels[level];
+        final double[] weights = levelWeights[level];
+        final int size = levelSizes[level];
+        sort(values, weights, size);
+        final int valuesToCompact = size & ~1;
+        final int promoted = promoteOddValues[level] ? 1 : 0;
+        levelSizes[level] = 0;
+        for (int i = 0; i < valuesToCompact; i += 2) {
+            addToLevel(level + 1, values[i + promoted], weights[i] + weights[i + 1]);
+        }
+        promoteOddValues[level] = !promoteOddValues[level];
+        if (valuesToCompact < size) {
+            // an odd one out stays at this level
+            values[0] = values[size - 1];
+            weights[0] = weights[size - 1];
+            levelSizes[level] = 1;
+        }
+    }
+
+    /**
+     * Sorts values[0] to values[size - 1] into ascending order (as {@link Arrays#sort(double[])} does), moving their
+     * weights along with them.  The sort is stable, so values that are equal keep the order of their weights.
+     */
+    static void sort(double[] values, double[] weights, int size) {
+        if (size < 2) {
+            return;
+        }
+        mergeSort(Arrays.copyOf(values, size), Arrays.copyOf(weights, size), values, weights, 0, size);
+    }
+
+    /**
+     * Sorts the values and weights in [from, to) of sourceValues and sourceWeights into values and weights, both
+     * pairs of arrays starting out with the same contents in that range.
+     */
+    private static void mergeSort(double[] sourceValues, double[] sourceWeights, double[] values, double[] weights, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        final int mid = (from + to) >>> 1;
+        // sort each half of values into source, then merge them back
+        mergeSort(values, weights, sourceValues, sourceWeights, from, mid);
+        mergeSort(values, weights, sourceValues, sourceWeights, mid, to);
+        int left = from;
+        int right = mid;
+        for (int i = from; i < to; i++) {
+            if (right == to || (left < mid && Double.compare(sourceValues[left], sourceValues[right]) <= 0)) {
+                values[i] = sourceValues[left];
+                weights[i] = sourceWeights[left++];
+            } else {
+                values[i] = sourceValues[right];
+                weights[i] = sourceWeights[right++];
+            }
+        }
+    }
+}
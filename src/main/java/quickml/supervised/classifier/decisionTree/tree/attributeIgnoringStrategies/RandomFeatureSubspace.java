@@ -0,0 +1,89 @@
+package quickml.supervised.classifier.decisionTree.tree.attributeIgnoringStrategies;
+
+import com.google.common.base.Preconditions;
+import quickml.collections.MapUtils;
+import quickml.supervised.classifier.decisionTree.tree.Branch;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Ignores all but a random subspace of the attributes, of a fixed size, sampled either once per tree or once per
+ * node.  Unlike {@link IgnoreAttributesWithConstantProbability}, which decides attribute by attribute, the subspace
+ * is sampled up front, so {@link quickml.supervised.classifier.decisionTree.TreeBuilder} never looks at the
+ * attributes outside it.  When the subspace is sampled per tree, that means no candidate splits, histograms or
+ * evaluation at all for the ignored attributes.  When it is sampled per node, ignored attributes are still binned
+ * or split for the whole tree, as any node may sample them, but aren't looked at by the nodes that don't.
+ * <p/>
+ * Subspaces are drawn from {@link MapUtils#random}, so seeding it makes them reproducible.
+ */
+public class RandomFeatureSubspace implements AttributeIgnoringStrategy {
+
+    public enum Scope {
+        TREE, NODE
+    }
+
+    private final double ignoreAttributeProbability;
+    private final Scope scope;
+
+    /**
+     * @param ignoreAttributeProbability the fraction of the attributes to leave out of the subspace, though it
+     *                                   always has at least one attribute
+     * @param scope                      whether a subspace is sampled for every tree or for every node
+     */
+    public RandomFeatureSubspace(double ignoreAttributeProbability, Scope scope) {
+        Preconditions.checkArgument(ignoreAttributeProbability >= 0 && ignoreAttributeProbability < 1, "ignoreAttributeProbability must be at least 0 and less than 1");
+        this.ignoreAttributeProbability = ignoreAttributeProbability;
+        this.scope = Preconditions.checkNotNull(scope);
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    /**
+     * @return the ids of a random sample of the attributes, in ascending order
+     */
+    public int[] sampleSubspace(int numAttributes) {
+        final int[] attributes = new int[numAttributes];
+        for (int attribute = 0; attribute < numAttributes; attribute++) {
+            attributes[attribute] = attribute;
+        }
+        final int subspaceSize = Math.max(1, (int) Math.round(numAttributes * (1 - ignoreAttributeProbability)));
+        if (subspaceSize >= numAttributes) {
+            return attributes;
+        }
+        // a partial Fisher-Yates shuffle, leaving the sample at the start
+        final Random random = MapUtils.random;
+        for (int i = 0; i < subspaceSize; i++) {
+            final int j = i + random.nextInt(numAttributes - i);
+            final int attribute = attributes[j];
+            attributes[j] = attributes[i];
+            attributes[i] = attribute;
+        }
+        final int[] subspace = Arrays.copyOf(attributes, subspaceSize);
+        Arrays.sort(subspace);
+        return subspace;
+    }
+
+    /**
+     * For callers that don't sample subspaces, ignores each attribute with the same probability that it would be
+     * left out of one.
+     */
+    @Override
+    public boolean ignoreAttribute(String attribute, Branch parent) {
+        return MapUtils.random.nextDouble() < ignoreAttributeProbability;
+    }
+
+    @Override
+    public RandomFeatureSubspace copy() {
+        return new RandomFeatureSubspace(ignoreAttributeProbability, scope);
+    }
+
+    @Override
+    public String toString() {
+        return "RandomFeatureSubspace{" + "ignoreAttributeProbability=" + ignoreAttributeProbability +
+                ", scope=" + scope +
+                '}';
+    }
+}
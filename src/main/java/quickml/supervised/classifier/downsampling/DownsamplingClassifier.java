@@ -78,4 +78,8 @@ public class DownsamplingClassifier extends AbstractClassifier {
     public Serializable getMajorityClassification() {
         return majorityClassification;
     }
+
+    public Serializable getMinorityClassification() {
+        return minorityClassification;
+    }
 }
@@ -0,0 +1,91 @@
+package quickml.supervised.classifier.duplicateCollapsing;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import quickml.data.AttributesMap;
+import quickml.data.ClassifierInstance;
+import quickml.supervised.PredictiveModel;
+import quickml.supervised.PredictiveModelBuilder;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Trains the wrapped builder on the training data with duplicate instances, those with equal attributes and
+ * classification, collapsed into one instance whose weight is their total weight.  Builders that only use the
+ * instances through their weights, such as {@link quickml.supervised.classifier.decisionTree.TreeBuilder}, build the
+ * same model from less data, as long as they estimate weighted quantiles of numeric values exactly (a TreeBuilder
+ * does for nodes of fewer than {@link quickml.supervised.classifier.decisionTree.TreeBuilder#QUANTILE_SKETCH_CAPACITY}
+ * instances).
+ */
+public class DuplicateCollapsingClassifierBuilder<P extends PredictiveModel> implements PredictiveModelBuilder<P, ClassifierInstance> {
+
+    private final PredictiveModelBuilder<P, ClassifierInstance> wrappedBuilder;
+
+    public DuplicateCollapsingClassifierBuilder(PredictiveModelBuilder<P, ClassifierInstance> wrappedBuilder) {
+        this.wrappedBuilder = wrappedBuilder;
+    }
+
+    @Override
+    public P buildPredictiveModel(Iterable<ClassifierInstance> trainingData) {
+        return wrappedBuilder.buildPredictiveModel(collapseDuplicates(trainingData));
+    }
+
+    @Override
+    public void updateBuilderConfig(Map<String, Object> config) {
+        wrappedBuilder.updateBuilderConfig(config);
+    }
+
+    /**
+     * @return an instance for every distinct pair of attributes and classification in trainingData, weighted by
+     * the total weight of the instances with them, in the order that they first occur
+     */
+    public static List<ClassifierInstance> collapseDuplicates(Iterable<ClassifierInstance> trainingData) {
+        final Map<AttributesAndLabel, double[]> weights = Maps.newLinkedHashMap();
+        for (ClassifierInstance instance : trainingData) {
+            final AttributesAndLabel key = new AttributesAndLabel(instance.getAttributes(), instance.getLabel());
+            final double[] weight = weights.get(key);
+            if (weight == null) {
+                weights.put(key, new double[]{instance.getWeight()});
+            } else {
+                weight[0] += instance.getWeight();
+            }
+        }
+        final List<ClassifierInstance> collapsed = Lists.newArrayListWithCapacity(weights.size());
+        for (Map.Entry<AttributesAndLabel, double[]> entry : weights.entrySet()) {
+            collapsed.add(new ClassifierInstance(entry.getKey().attributes, entry.getKey().label, entry.getValue()[0]));
+        }
+        return collapsed;
+    }
+
+    /**
+     * The key that duplicates share, which hashes the attributes only once as hashing an AttributesMap visits
+     * every attribute.
+     */
+    private static final class AttributesAndLabel {
+        private final AttributesMap attributes;
+        private final Serializable label;
+        private final int hashCode;
+
+        private AttributesAndLabel(AttributesMap attributes, Serializable label) {
+            this.attributes = attributes;
+            this.label = label;
+            this.hashCode = 31 * attributes.hashCode() + Objects.hashCode(label);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final AttributesAndLabel that = (AttributesAndLabel) o;
+            return hashCode == that.hashCode && Objects.equals(label, that.label) && attributes.equals(that.attributes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * A predictive model builder wrapper that collapses instances with identical attributes and classification into
+ * a single instance weighted by their total weight before training, which can shrink event data with many
+ * repeated rows several-fold.
+ */
+package quickml.supervised.classifier.duplicateCollapsing;
@@ -1,18 +1,26 @@
 package quickml.supervised.classifier.randomForest;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.AtomicDouble;
 
 import quickml.data.AttributesMap;
+import quickml.data.BatchPredictions;
+import quickml.data.ClassificationDictionary;
 import quickml.data.PredictionMap;
 import quickml.supervised.classifier.AbstractClassifier;
 import quickml.supervised.classifier.decisionTree.Tree;
 import quickml.supervised.classifier.decisionTree.tree.Leaf;
+import quickml.supervised.classifier.decisionTree.tree.Node;
 
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Created with IntelliJ IDEA.
@@ -25,11 +33,18 @@ public class RandomForest extends AbstractClassifier {
 
     static final long serialVersionUID = 56394564395638954L;
 
+    /**
+     * The smallest batch that {@link #predictBatch(List, int)} scores with blocks of trees in parallel, below which
+     * starting threads costs more than it saves.
+     */
+    public static final int MIN_INSTANCES_TO_PREDICT_IN_PARALLEL = 10000;
+
     public final List<Tree> trees;
     private Set<Serializable> classifications = new HashSet<>();
     private boolean binaryClassification = true;
+    private transient volatile ClassificationDictionary classificationDictionary;
 
-    protected RandomForest(List<Tree> trees, Set<Serializable> classifications) {
+    public RandomForest(List<Tree> trees, Set<Serializable> classifications) {
         Preconditions.checkArgument(trees.size() > 0, "We must have at least one tree");
         this.trees = trees;
         this.classifications = classifications;
@@ -40,6 +55,28 @@ public class RandomForest extends AbstractClassifier {
         }
     }
 
+    public Set<Serializable> getClassifications() {
+        return classifications;
+    }
+
+    /**
+     * @return a numbering of the classifications in the order of their iteration, which the prediction maps of
+     * this forest, and of its trees, are backed by
+     */
+    public ClassificationDictionary getClassificationDictionary() {
+        ClassificationDictionary dictionary = classificationDictionary;
+        if (dictionary == null) {
+            dictionary = new ClassificationDictionary(classifications);
+            // the leaves cache their probabilities by dictionary, so predicting with a tree on its own mustn't
+            // make them renumber them by another one
+            for (Tree tree : trees) {
+                tree.setClassificationDictionary(dictionary);
+            }
+            classificationDictionary = dictionary;
+        }
+        return dictionary;
+    }
+
     @Override
     public double getProbability(AttributesMap attributes, Serializable classification) {
         double total = 0;
@@ -76,23 +113,27 @@ public class RandomForest extends AbstractClassifier {
     }
 
     private PredictionMap getPredictionForNClasses(AttributesMap attributes) {
-        PredictionMap sumsByClassification = new PredictionMap(new HashMap<Serializable, Double>());
-        for (Tree tree : trees) {
-            final PredictionMap treeProbs = tree.predict(attributes);
-            for (Map.Entry<Serializable, Double> tpe : treeProbs.entrySet()) {
-                Double sum = sumsByClassification.get(tpe.getKey());
-                if (sum == null) sum = 0.0;
-                sum += tpe.getValue();
-                sumsByClassification.put(tpe.getKey(), sum);
+        PredictionMap probsByClassification = sumProbabilities(attributes);
+        for (int classification = 0; classification < getClassificationDictionary().size(); classification++) {
+            if (probsByClassification.hasProbability(classification)) {
+                probsByClassification.setProbability(classification, probsByClassification.getProbability(classification) / trees.size());
             }
         }
-        PredictionMap probsByClassification = new PredictionMap(new HashMap<Serializable, Double>());
-        for (Map.Entry<Serializable, Double> sumEntry : sumsByClassification.entrySet()) {
-            probsByClassification.put(sumEntry.getKey(), sumEntry.getValue() / trees.size());
-        }
         return probsByClassification;
     }
 
+    /**
+     * @return the sums over the trees of the probabilities of the classifications their leaves have seen, summed in
+     * place into a single map backed by the classification dictionary
+     */
+    private PredictionMap sumProbabilities(AttributesMap attributes) {
+        PredictionMap sumsByClassification = PredictionMap.newMap(getClassificationDictionary());
+        for (Tree tree : trees) {
+            tree.node.getLeaf(attributes).addProbabilities(sumsByClassification);
+        }
+        return sumsByClassification;
+    }
+
     @Override
     public PredictionMap predictWithoutAttributes(AttributesMap attributes, Set<String> attributesToIgnore) {
         PredictionMap sumsByClassification = new PredictionMap(new HashMap<Serializable, Double>());
@@ -113,21 +154,108 @@ public class RandomForest extends AbstractClassifier {
     }
 
     private PredictionMap getPredictionForTwoClasses(AttributesMap attributes) {
-        PredictionMap probsByClassification = PredictionMap.newMap();
-        Iterator<Serializable> classIterator = classifications.iterator();
-        if (!classIterator.hasNext()) {
-            throw new RuntimeException("no class labels present in classification set");
-        }
-        Serializable firstClassification = classIterator.next();
-        double firstProbability = getProbability(attributes, firstClassification);
-        probsByClassification.put(firstClassification, firstProbability);
-        if (classIterator.hasNext()) {
-            Serializable secondClassification = classIterator.next();
-            probsByClassification.put(secondClassification, 1.0 - firstProbability);
+        PredictionMap probsByClassification = sumProbabilities(attributes);
+        double firstProbability = probsByClassification.getProbability(0) / trees.size();
+        if (Double.isInfinite(firstProbability) || Double.isNaN(firstProbability)) {
+            throw new RuntimeException("Probability must be a normal number, not "+firstProbability);
+        }
+        probsByClassification.setProbability(0, firstProbability);
+        if (getClassificationDictionary().size() > 1) {
+            probsByClassification.setProbability(1, 1.0 - firstProbability);
         }
         return probsByClassification;
     }
 
+    /**
+     * Predicts a batch of instances, as {@link #predictBatch(List, int)} with a thread per processor.
+     */
+    public BatchPredictions predictBatch(List<AttributesMap> batch) {
+        return predictBatch(batch, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Predicts the probability of every classification for a batch of instances, as {@link #predict} does for
+     * each.  The trees are walked tree-major, each tree scoring the whole batch before the next, so that the nodes
+     * of a tree stay in cache while it's used, and probabilities are summed into a primitive matrix.  Batches of at
+     * least {@link #MIN_INSTANCES_TO_PREDICT_IN_PARALLEL} instances are scored by blocks of trees in parallel, whose
+     * sums are then added up, which can make probabilities differ from those of {@link #predict} in the last bits.
+     *
+     * @param threadCount the most threads to score blocks of trees with
+     */
+    public BatchPredictions predictBatch(List<AttributesMap> batch, int threadCount) {
+        Preconditions.checkArgument(threadCount > 0, "threadCount must be positive");
+        final AttributesMap[] instances = batch.toArray(new AttributesMap[batch.size()]);
+        final ClassificationDictionary dictionary = getClassificationDictionary();
+        final int numBlocks = instances.length < MIN_INSTANCES_TO_PREDICT_IN_PARALLEL ? 1 : Math.min(threadCount, trees.size());
+        final double[] probabilities;
+        if (numBlocks == 1) {
+            probabilities = sumProbabilities(instances, dictionary, 0, trees.size());
+        } else {
+            probabilities = sumProbabilitiesInParallel(instances, dictionary, numBlocks);
+        }
+        for (int i = 0; i < probabilities.length; i++) {
+            probabilities[i] /= trees.size();
+        }
+        if (binaryClassification && dictionary.size() == 2) {
+            // as predict does for two classes
+            for (int offset = 0; offset < probabilities.length; offset += 2) {
+                probabilities[offset + 1] = 1.0 - probabilities[offset];
+            }
+        }
+        return new BatchPredictions(dictionary, probabilities);
+    }
+
+    private double[] sumProbabilitiesInParallel(final AttributesMap[] instances, final ClassificationDictionary dictionary, int numBlocks) {
+        final ExecutorService executorService = Executors.newFixedThreadPool(numBlocks);
+        try {
+            final List<Future<double[]>> blockFutures = Lists.newArrayListWithCapacity(numBlocks);
+            for (int block = 0; block < numBlocks; block++) {
+                final int fromTree = block * trees.size() / numBlocks;
+                final int toTree = (block + 1) * trees.size() / numBlocks;
+                blockFutures.add(executorService.submit(new Callable<double[]>() {
+                    @Override
+                    public double[] call() throws Exception {
+                        return sumProbabilities(instances, dictionary, fromTree, toTree);
+                    }
+                }));
+            }
+            final double[] probabilities = blockFutures.get(0).get();
+            for (Future<double[]> blockFuture : blockFutures.subList(1, numBlocks)) {
+                final double[] blockProbabilities = blockFuture.get();
+                for (int i = 0; i < probabilities.length; i++) {
+                    probabilities[i] += blockProbabilities[i];
+                }
+            }
+            return probabilities;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    /**
+     * @return the sums of the probabilities of every classification that the trees from fromTree to toTree give
+     * each instance, by instance and then by classification.  Only the first classification is summed for binary
+     * classification, as the other one's probability is its complement.
+     */
+    private double[] sumProbabilities(AttributesMap[] instances, ClassificationDictionary dictionary, int fromTree, int toTree) {
+        final int numClassifications = dictionary.size();
+        final double[] sums = new double[instances.length * numClassifications];
+        for (int tree = fromTree; tree < toTree; tree++) {
+            final Node root = trees.get(tree).node;
+            for (int instance = 0, offset = 0; instance < instances.length; instance++, offset += numClassifications) {
+                final Leaf leaf = root.getLeaf(instances[instance]);
+                if (binaryClassification) {
+                    sums[offset] += leaf.getProbability(dictionary, 0);
+                } else {
+                    leaf.addProbabilities(dictionary, sums, offset);
+                }
+            }
+        }
+        return sums;
+    }
+
     @Override
     public Serializable getClassificationByMaxProb(AttributesMap attributes) {
         Map<Serializable, AtomicDouble> probTotals = Maps.newHashMap();
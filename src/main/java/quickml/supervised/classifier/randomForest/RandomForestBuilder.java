@@ -5,9 +5,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import quickml.supervised.PredictiveModelBuilder;
 import quickml.data.ClassifierInstance;
+import quickml.data.ColumnarTrainingData;
 import quickml.supervised.classifier.Classifier;
 import quickml.supervised.classifier.decisionTree.Tree;
 import quickml.supervised.classifier.decisionTree.TreeBuilder;
+import quickml.supervised.classifier.decisionTree.tree.NumericBins;
 import quickml.supervised.classifier.decisionTree.tree.attributeIgnoringStrategies.IgnoreAttributesWithConstantProbability;
 import java.io.Serializable;
 import java.util.HashSet;
@@ -61,6 +63,14 @@ public class RandomForestBuilder<T extends ClassifierInstance> implements Predic
         return this;
     }
 
+    /**
+     * Grow the forest's trees as extremely randomized trees, see {@link TreeBuilder#extraTrees}.
+     */
+    public RandomForestBuilder<T> extraTrees(boolean extraTrees) {
+        treeBuilder.extraTrees(extraTrees);
+        return this;
+    }
+
     public RandomForestBuilder<T> executorThreadCount(int threadCount) {
         this.executorThreadCount = threadCount;
         return this;
@@ -68,12 +78,28 @@ public class RandomForestBuilder<T extends ClassifierInstance> implements Predic
 
     @Override
     public RandomForest buildPredictiveModel(Iterable<T> trainingData) {
+        return buildPredictiveModel(ColumnarTrainingData.create(trainingData));
+    }
+
+    /**
+     * Builds the forest from columnar training data, which all of the trees share, along with the numeric
+     * attribute bins if the trees use histograms.
+     */
+    public RandomForest buildPredictiveModel(ColumnarTrainingData trainingData) {
+        return buildPredictiveModel(trainingData, treeBuilder.createNumericBins(trainingData));
+    }
+
+    /**
+     * Builds the forest from columnar training data whose numeric attributes have already been binned, eg. into
+     * a file by {@link NumericBins#create(ColumnarTrainingData, int, java.io.File)} for memory-mapped training data.
+     */
+    public RandomForest buildPredictiveModel(ColumnarTrainingData trainingData, NumericBins numericBins) {
         executorService = Executors.newFixedThreadPool(executorThreadCount);
         logger.info("Building random forest with {} trees", numTrees);
         List<Future<Tree>> treeFutures = Lists.newArrayListWithCapacity(numTrees);
         List<Tree> trees = Lists.newArrayListWithCapacity(numTrees);
         for (int treeIndex = 0; treeIndex < numTrees; treeIndex++) {
-            treeFutures.add(submitTreeBuild(trainingData, treeIndex));
+            treeFutures.add(submitTreeBuild(trainingData, numericBins, treeIndex));
         }
         collectTreeFutures(trees, treeFutures);
         Set<Serializable> classifications = new HashSet<>();
@@ -83,19 +109,19 @@ public class RandomForestBuilder<T extends ClassifierInstance> implements Predic
         return new RandomForest(trees, classifications);
     }
 
-    private Future<Tree> submitTreeBuild(final Iterable<T> trainingData, final int treeIndex) {
+    private Future<Tree> submitTreeBuild(final ColumnarTrainingData trainingData, final NumericBins numericBins, final int treeIndex) {
         return executorService.submit(new Callable<Tree>() {
 
             @Override
             public Tree call() throws Exception {
-                return buildModel(trainingData, treeIndex);
+                return buildModel(trainingData, numericBins, treeIndex);
             }
         });
     }
 
-    private Tree buildModel(Iterable<T> trainingData, int treeIndex) {
+    private Tree buildModel(ColumnarTrainingData trainingData, NumericBins numericBins, int treeIndex) {
         logger.debug("Building tree {} of {}", treeIndex, numTrees);
-        return treeBuilder.copy().buildPredictiveModel(trainingData);
+        return treeBuilder.copy().buildPredictiveModel(trainingData, numericBins);
     }
 
     protected void collectTreeFutures(List<Tree> trees, List<Future<Tree>> treeFutures) {
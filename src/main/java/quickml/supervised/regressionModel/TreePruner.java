@@ -1,7 +1,170 @@
 package quickml.supervised.regressionModel;
 
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import quickml.supervised.classifier.decisionTree.Tree;
+import quickml.supervised.classifier.decisionTree.tree.Branch;
+import quickml.supervised.classifier.decisionTree.tree.ClassificationCounter;
+import quickml.supervised.classifier.decisionTree.tree.Leaf;
+import quickml.supervised.classifier.decisionTree.tree.Node;
+import quickml.supervised.classifier.randomForest.RandomForest;
+
+import java.io.Serializable;
+import java.util.List;
+
 /**
- * Created by alexanderhawk on 2/27/14.
+ * Cost-complexity pruning of trees, as in CART.  The loss of a node is the squared error of predicting the
+ * classification probabilities of its leaf (or of the leaf it would be if its subtree were collapsed) for the
+ * training instances that reached it, which is computed from the classification counts that the leaves keep.  A
+ * branch is collapsed into a leaf unless its subtree reduces that loss, per unit of training weight, by more than
+ * complexityPenalty for every leaf it adds.
+ * <p/>
+ * The tree is pruned in a single bottom-up pass, which collapses exactly the branches that weakest-link pruning
+ * (repeatedly collapsing the branch that gains least per leaf it adds) would collapse before the weakest link's gain
+ * exceeded complexityPenalty.
  */
 public class TreePruner {
+
+    private final double complexityPenalty;
+
+    /**
+     * @param complexityPenalty the reduction in training loss, per unit of training weight, that each leaf of a
+     *                          subtree has to bring for the subtree to be kept, 0 to only collapse subtrees that don't
+     *                          reduce the loss at all
+     */
+    public TreePruner(double complexityPenalty) {
+        Preconditions.checkArgument(complexityPenalty >= 0, "complexityPenalty must not be negative");
+        this.complexityPenalty = complexityPenalty;
+    }
+
+    /**
+     * Prunes the tree in place, other than replacing its root if the whole tree collapses into a leaf.
+     */
+    public Result<Tree> prune(Tree tree) {
+        final LeafTotals totals = new LeafTotals();
+        totals.add(tree.node);
+        final int originalSize = tree.node.size();
+        final Subtree pruned = prune(tree.node, 0, complexityPenalty * totals.weight);
+        final Tree prunedTree = pruned.node == tree.node ? tree : new Tree(pruned.node, tree.getClassifications());
+        return new Result<>(prunedTree, originalSize - pruned.node.size(), (pruned.loss - totals.loss) / totals.weight);
+    }
+
+    /**
+     * Prunes every tree of the forest in place as {@link #prune(Tree)}.
+     *
+     * @return the pruned forest, with the nodes removed from all of its trees and the mean change in their loss
+     */
+    public Result<RandomForest> prune(RandomForest randomForest) {
+        final List<Tree> prunedTrees = Lists.newArrayListWithCapacity(randomForest.trees.size());
+        int nodesRemoved = 0;
+        double lossChange = 0;
+        for (Tree tree : randomForest.trees) {
+            final Result<Tree> result = prune(tree);
+            prunedTrees.add(result.getPrunedModel());
+            nodesRemoved += result.getNodesRemoved();
+            lossChange += result.getLossChange();
+        }
+        return new Result<>(new RandomForest(prunedTrees, randomForest.getClassifications()), nodesRemoved, lossChange / prunedTrees.size());
+    }
+
+    /**
+     * @param penalty the complexity penalty in units of loss, ie. scaled by the total weight of the tree
+     */
+    private Subtree prune(Node node, int depth, double penalty) {
+        if (node instanceof Leaf) {
+            final ClassificationCounter counts = ((Leaf) node).classificationCounts;
+            return new Subtree(node, counts, getLoss(counts), 1);
+        }
+        final Branch branch = (Branch) node;
+        final Subtree trueSubtree = prune(branch.trueChild, depth + 1, penalty);
+        final Subtree falseSubtree = prune(branch.falseChild, depth + 1, penalty);
+        branch.trueChild = trueSubtree.node;
+        branch.falseChild = falseSubtree.node;
+        final ClassificationCounter counts = trueSubtree.counts.add(falseSubtree.counts);
+        final double leafLoss = getLoss(counts);
+        final double subtreeLoss = trueSubtree.loss + falseSubtree.loss;
+        final int numLeaves = trueSubtree.numLeaves + falseSubtree.numLeaves;
+        if (leafLoss - subtreeLoss <= penalty * (numLeaves - 1)) {
+            return new Subtree(new Leaf(branch.parent, counts, depth), counts, leafLoss, 1);
+        }
+        return new Subtree(branch, counts, subtreeLoss, numLeaves);
+    }
+
+    /**
+     * @return the squared error of predicting the probabilities of counts for the instances they count
+     */
+    private static double getLoss(ClassificationCounter counts) {
+        final double total = counts.getTotal();
+        double sumOfSquaredCounts = 0;
+        for (Serializable classification : counts.allClassifications()) {
+            final double count = counts.getCount(classification);
+            sumOfSquaredCounts += count * count;
+        }
+        return total - sumOfSquaredCounts / total;
+    }
+
+    public static class Result<M> {
+        private final M prunedModel;
+        private final int nodesRemoved;
+        private final double lossChange;
+
+        Result(M prunedModel, int nodesRemoved, double lossChange) {
+            this.prunedModel = prunedModel;
+            this.nodesRemoved = nodesRemoved;
+            this.lossChange = lossChange;
+        }
+
+        public M getPrunedModel() {
+            return prunedModel;
+        }
+
+        /**
+         * @return the number of branches and leaves that pruning removed
+         */
+        public int getNodesRemoved() {
+            return nodesRemoved;
+        }
+
+        /**
+         * @return the increase in training loss per unit of training weight (for a forest, the mean over its trees)
+         */
+        public double getLossChange() {
+            return lossChange;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" + "nodesRemoved=" + nodesRemoved + ", lossChange=" + lossChange + '}';
+        }
+    }
+
+    private static class Subtree {
+        final Node node;
+        final ClassificationCounter counts;
+        final double loss;
+        final int numLeaves;
+
+        Subtree(Node node, ClassificationCounter counts, double loss, int numLeaves) {
+            this.node = node;
+            this.counts = counts;
+            this.loss = loss;
+            this.numLeaves = numLeaves;
+        }
+    }
+
+    private static class LeafTotals {
+        double weight;
+        double loss;
+
+        void add(Node node) {
+            if (node instanceof Leaf) {
+                final ClassificationCounter counts = ((Leaf) node).classificationCounts;
+                weight += counts.getTotal();
+                loss += getLoss(counts);
+            } else {
+                add(((Branch) node).trueChild);
+                add(((Branch) node).falseChild);
+            }
+        }
+    }
 }
@@ -40,7 +40,7 @@ public class BenchmarkTest {
     @Before
     public void setUp() throws Exception {
         classifierLossChecker = new ClassifierLossChecker<>(new ClassifierLogCVLossFunction(0.000001));
-        scorers = newArrayList(
+        scorers = Lists.<Scorer>newArrayList(
                 new SplitDiffScorer(),
                 new MSEScorer(MSEScorer.CrossValidationCorrection.FALSE),
                 new MSEScorer(MSEScorer.CrossValidationCorrection.TRUE));
@@ -0,0 +1,105 @@
+package quickml;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.junit.Test;
+import quickml.data.AttributesMap;
+import quickml.data.ClassifierInstance;
+import quickml.supervised.InstanceLoader;
+import quickml.supervised.classifier.Classifier;
+import quickml.supervised.classifier.decisionTree.TreeBuilder;
+import quickml.supervised.crossValidation.ClassifierLossChecker;
+import quickml.supervised.crossValidation.CrossValidator;
+import quickml.supervised.crossValidation.data.FoldedData;
+import quickml.supervised.crossValidation.lossfunctions.ClassifierRMSELossFunction;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the greedy search for categorical splits of multi-class data with the one-vs-rest sweep, both for
+ * build time and cross validated loss.  Iris has 3 classes and its measurements are read as categorical values,
+ * the advertising data is made multi-class by predicting the browser from its other, mostly high-cardinality,
+ * attributes, and the synthetic data has an attribute with thousands of values.
+ */
+public class CategoricalSplitBenchmarkTest {
+    @Test
+    public void irisBenchmark() throws Exception {
+        compareSearches("iris", InstanceLoader.getIrisInstances());
+    }
+
+    @Test
+    public void advertisingBenchmark() throws Exception {
+        compareSearches("advertising", relabelByAttribute(InstanceLoader.getAdvertisingInstances(), "browser"));
+    }
+
+    @Test
+    public void highCardinalityBenchmark() throws Exception {
+        final List<ClassifierInstance> instances = getHighCardinalityInstances(40000, 2000, 5, new Random(1));
+        // the greedy search rescans the remaining values for each one it adds, the sweep sorts them once per class
+        final long greedyMillis = buildMillis(instances, false);
+        final long oneVsRestMillis = buildMillis(instances, true);
+        assertTrue(String.format("One-vs-rest took %sms, greedy took %sms", oneVsRestMillis, greedyMillis), oneVsRestMillis * 2 < greedyMillis);
+        compareSearches("high-cardinality", instances);
+    }
+
+    private void compareSearches(String dsName, List<ClassifierInstance> instances) {
+        final double greedyLoss = benchmark(dsName, instances, false);
+        final double oneVsRestLoss = benchmark(dsName, instances, true);
+        assertTrue(String.format("One-vs-rest loss %s is much worse than greedy loss %s", oneVsRestLoss, greedyLoss), oneVsRestLoss <= greedyLoss * 1.1);
+    }
+
+    private double benchmark(String dsName, List<ClassifierInstance> instances, boolean oneVsRest) {
+        final TreeBuilder treeBuilder = createTreeBuilder(oneVsRest);
+        final String search = oneVsRest ? "one-vs-rest" : "greedy";
+        final long buildMillis = buildMillis(instances, oneVsRest);
+
+        final Map<String, Object> cfg = Maps.newHashMap();
+        final CrossValidator<Classifier, ClassifierInstance> validator = new CrossValidator<>(treeBuilder, new ClassifierLossChecker<>(new ClassifierRMSELossFunction()), new FoldedData<>(instances, 4, 4));
+        final double loss = validator.getLossForModel(cfg);
+        System.out.println(dsName + ", " + search + ", build time " + buildMillis + "ms, loss " + loss);
+        return loss;
+    }
+
+    private long buildMillis(List<ClassifierInstance> instances, boolean oneVsRest) {
+        final long startTime = System.nanoTime();
+        createTreeBuilder(oneVsRest).buildPredictiveModel(instances);
+        return (System.nanoTime() - startTime) / 1000000;
+    }
+
+    private TreeBuilder createTreeBuilder(boolean oneVsRest) {
+        return new TreeBuilder().maxDepth(8).oneVsRestCategoricalSplits(oneVsRest);
+    }
+
+    /**
+     * @return instances with a single categorical attribute of numValues values, each of which mostly has one of
+     * numClasses classes
+     */
+    private List<ClassifierInstance> getHighCardinalityInstances(int numInstances, int numValues, int numClasses, Random random) {
+        final List<ClassifierInstance> instances = Lists.newArrayList();
+        for (int x = 0; x < numInstances; x++) {
+            final int value = random.nextInt(numValues);
+            final AttributesMap attributes = AttributesMap.newHashMap();
+            attributes.put("item", "item" + value);
+            final int label = random.nextInt(10) == 0 ? random.nextInt(numClasses) : value * 7919 % numClasses;
+            instances.add(new ClassifierInstance(attributes, "class" + label));
+        }
+        return instances;
+    }
+
+    private List<ClassifierInstance> relabelByAttribute(List<ClassifierInstance> instances, String attribute) {
+        final List<ClassifierInstance> relabeled = Lists.newArrayList();
+        for (ClassifierInstance instance : instances) {
+            final AttributesMap attributes = AttributesMap.newHashMap();
+            attributes.putAll(instance.getAttributes());
+            final Object label = attributes.remove(attribute);
+            if (label != null) {
+                relabeled.add(new ClassifierInstance(attributes, label.toString(), instance.getWeight()));
+            }
+        }
+        return relabeled;
+    }
+}
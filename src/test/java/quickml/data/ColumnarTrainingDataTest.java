@@ -0,0 +1,108 @@
+package quickml.data;
+
+import com.google.common.collect.Lists;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.List;
+
+public class ColumnarTrainingDataTest {
+
+    @Test
+    public void encodesNumericAndCategoricalColumns() {
+        List<ClassifierInstance> instances = Lists.newArrayList();
+        instances.add(instance("yes", 2.0, "height", 1.5, "color", "red"));
+        instances.add(instance("no", 1.0, "height", 3, "color", "blue"));
+        instances.add(instance("yes", 1.0, "color", "red"));
+
+        ColumnarTrainingData trainingData = ColumnarTrainingData.create(instances);
+
+        Assert.assertEquals(trainingData.size(), 3);
+        Assert.assertEquals(trainingData.getNumAttributes(), 2);
+
+        int height = trainingData.getAttributeId("height");
+        Assert.assertTrue(trainingData.isNumeric(height));
+        Assert.assertEquals(trainingData.getNumericColumn(height), new double[]{1.5, 3.0, 0.0});
+
+        int color = trainingData.getAttributeId("color");
+        Assert.assertFalse(trainingData.isNumeric(color));
+        int[] colors = trainingData.getCategoricalColumn(color);
+        Assert.assertEquals(colors[0], colors[2]);
+        Assert.assertEquals(trainingData.getCategoricalValue(color, colors[0]), "red");
+        Assert.assertEquals(trainingData.getCategoricalValue(color, colors[1]), "blue");
+        Assert.assertEquals(trainingData.getNumCategoricalValues(color), 3);
+
+        Assert.assertEquals(trainingData.getAttributeId("weight"), -1);
+        Assert.assertEquals(trainingData.getNumLabels(), 2);
+        int[] labels = trainingData.getLabels();
+        Assert.assertEquals(trainingData.getLabelValue(labels[0]), "yes");
+        Assert.assertEquals(trainingData.getLabelValue(labels[1]), "no");
+        Assert.assertEquals(labels[2], labels[0]);
+        Assert.assertEquals(trainingData.getWeights(), new double[]{2.0, 1.0, 1.0});
+    }
+
+    @Test
+    public void attributeWithAnyNonNumericValueIsCategorical() {
+        List<ClassifierInstance> instances = Lists.newArrayList();
+        instances.add(instance("yes", 1.0, "size", 1));
+        instances.add(instance("no", 1.0, "size", "large"));
+        instances.add(instance("no", 1.0));
+
+        ColumnarTrainingData trainingData = ColumnarTrainingData.create(instances);
+
+        int size = trainingData.getAttributeId("size");
+        Assert.assertFalse(trainingData.isNumeric(size));
+        int[] sizes = trainingData.getCategoricalColumn(size);
+        Assert.assertEquals(trainingData.getCategoricalValue(size, sizes[0]), 1);
+        Assert.assertEquals(trainingData.getCategoricalValue(size, sizes[1]), "large");
+        Assert.assertEquals(sizes[2], ColumnarTrainingData.MISSING_CODE);
+        Assert.assertNull(trainingData.getCategoricalValue(size, ColumnarTrainingData.MISSING_CODE));
+    }
+
+    @Test
+    public void writtenFileMapsBackToSameColumns() throws Exception {
+        List<ClassifierInstance> instances = Lists.newArrayList();
+        instances.add(instance("yes", 2.0, "height", 1.5, "color", "red"));
+        instances.add(instance("no", 1.0, "height", 3, "color", "blue"));
+        instances.add(instance("yes", 1.0, "color", "red"));
+        File file = File.createTempFile("columnarTrainingData", ".bin");
+        file.deleteOnExit();
+
+        ColumnarTrainingData.write(instances, file);
+        ColumnarTrainingData inMemory = ColumnarTrainingData.create(instances);
+        ColumnarTrainingData mapped = ColumnarTrainingData.map(file);
+
+        Assert.assertTrue(inMemory.isInMemory());
+        Assert.assertFalse(mapped.isInMemory());
+        Assert.assertEquals(mapped.size(), 3);
+        Assert.assertEquals(mapped.getNumAttributes(), 2);
+        int height = mapped.getAttributeId("height");
+        Assert.assertTrue(mapped.isNumeric(height));
+        Assert.assertEquals(mapped.getNumericColumnBuffer(height), inMemory.getNumericColumnBuffer(height));
+        int color = mapped.getAttributeId("color");
+        Assert.assertEquals(mapped.getCategoricalColumnBuffer(color), inMemory.getCategoricalColumnBuffer(color));
+        Assert.assertEquals(mapped.getNumCategoricalValues(color), 3);
+        Assert.assertEquals(mapped.getCategoricalValue(color, mapped.getCategoricalColumnBuffer(color).get(1)), "blue");
+        Assert.assertEquals(mapped.getLabelBuffer(), inMemory.getLabelBuffer());
+        Assert.assertEquals(mapped.getLabelValue(mapped.getLabelBuffer().get(0)), "yes");
+        Assert.assertEquals(mapped.getWeightBuffer(), inMemory.getWeightBuffer());
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void mappedColumnsAreOnlyAvailableAsBuffers() throws Exception {
+        File file = File.createTempFile("columnarTrainingData", ".bin");
+        file.deleteOnExit();
+        ColumnarTrainingData.write(Lists.newArrayList(instance("yes", 1.0, "height", 1.5)), file);
+        ColumnarTrainingData.map(file).getLabels();
+    }
+
+    private static ClassifierInstance instance(String label, double weight, Object... attributesAndValues) {
+        AttributesMap attributes = AttributesMap.newHashMap();
+        for (int i = 0; i < attributesAndValues.length; i += 2) {
+            attributes.put((String) attributesAndValues[i], (Serializable) attributesAndValues[i + 1]);
+        }
+        return new ClassifierInstance(attributes, label, weight);
+    }
+}
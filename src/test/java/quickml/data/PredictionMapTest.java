@@ -0,0 +1,79 @@
+package quickml.data;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.Map;
+
+public class PredictionMapTest {
+
+    private final ClassificationDictionary dictionary = new ClassificationDictionary(Lists.<Serializable>newArrayList("a", "b", "c"));
+
+    @Test
+    public void dictionaryMapsActAsOrdinaryMaps() {
+        PredictionMap predictionMap = PredictionMap.newMap(dictionary);
+        Assert.assertTrue(predictionMap.isEmpty());
+        Assert.assertEquals(predictionMap.get("a"), 0.0);
+
+        predictionMap.put("a", 0.25);
+        predictionMap.addProbability(2, 0.5);
+        predictionMap.addProbability(2, 0.25);
+
+        Assert.assertEquals(predictionMap.size(), 2);
+        Assert.assertTrue(predictionMap.containsKey("c"));
+        Assert.assertFalse(predictionMap.containsKey("b"));
+        Assert.assertFalse(predictionMap.hasProbability(1));
+        Assert.assertEquals(predictionMap.get("c"), 0.75);
+        Assert.assertEquals(predictionMap.getProbability(0), 0.25);
+        Assert.assertEquals(predictionMap.getProbability(1), 0.0);
+        Assert.assertEquals(predictionMap, hashPredictionMap("a", 0.25, "c", 0.75));
+        Assert.assertEquals(predictionMap.hashCode(), hashPredictionMap("a", 0.25, "c", 0.75).hashCode());
+
+        Assert.assertEquals(predictionMap.remove("a"), 0.25);
+        Assert.assertEquals(predictionMap, hashPredictionMap("c", 0.75));
+    }
+
+    @Test
+    public void entriesWriteThroughAndCanBeRemoved() {
+        PredictionMap predictionMap = PredictionMap.newMap(dictionary);
+        predictionMap.setProbability(0, 0.1);
+        predictionMap.setProbability(1, 0.2);
+
+        Iterator<Map.Entry<Serializable, Double>> entries = predictionMap.entrySet().iterator();
+        Map.Entry<Serializable, Double> first = entries.next();
+        Assert.assertEquals(first.getKey(), "a");
+        first.setValue(0.3);
+        Assert.assertEquals(entries.next().getKey(), "b");
+        entries.remove();
+        Assert.assertFalse(entries.hasNext());
+
+        Assert.assertEquals(predictionMap, hashPredictionMap("a", 0.3));
+    }
+
+    @Test
+    public void unknownClassificationsInflateTheMap() {
+        PredictionMap predictionMap = PredictionMap.newMap(dictionary);
+        predictionMap.setProbability(1, 0.4);
+        predictionMap.put("d", 0.6);
+
+        Assert.assertNull(predictionMap.getDictionary());
+        Assert.assertEquals(predictionMap, hashPredictionMap("b", 0.4, "d", 0.6));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void dictionariesRejectDuplicates() {
+        new ClassificationDictionary(Lists.<Serializable>newArrayList("a", "b", "a"));
+    }
+
+    private static PredictionMap hashPredictionMap(Object... keysAndValues) {
+        Map<Serializable, Double> map = Maps.newHashMap();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            map.put((Serializable) keysAndValues[i], (Double) keysAndValues[i + 1]);
+        }
+        return new PredictionMap(map);
+    }
+}
@@ -2,12 +2,15 @@ package quickml.supervised;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.google.common.collect.Lists;
 import quickml.BenchmarkTest;
+import quickml.data.AttributesMap;
 import quickml.data.ClassifierInstance;
 import quickml.utlities.CSVToInstanceReader;
 import quickml.utlities.CSVToInstanceReaderBuilder;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.List;
 import java.util.zip.GZIPInputStream;
@@ -33,5 +36,29 @@ public class InstanceLoader {
         return advertisingInstances;
     }
 
+    /**
+     * @return the iris data set, with its measurements as categorical values
+     */
+    public static List<ClassifierInstance> getIrisInstances() throws IOException {
+        final BufferedReader br = new BufferedReader(new InputStreamReader((new GZIPInputStream(BenchmarkTest.class.getResourceAsStream("iris.data.gz")))));
+        final List<ClassifierInstance> instances = Lists.newLinkedList();
+
+        String[] headings = new String[]{"sepal-length", "sepal-width", "petal-length", "petal-width"};
+
+        String line = br.readLine();
+        while (line != null) {
+            String[] splitLine = line.split(",");
+
+            AttributesMap attributes = AttributesMap.newHashMap();
+            for (int x = 0; x < splitLine.length - 1; x++) {
+                attributes.put(headings[x], splitLine[x]);
+            }
+            instances.add(new ClassifierInstance(attributes, splitLine[splitLine.length - 1]));
+            line = br.readLine();
+        }
+
+        return instances;
+    }
+
 
 }
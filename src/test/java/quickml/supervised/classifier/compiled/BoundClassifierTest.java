@@ -0,0 +1,116 @@
+package quickml.supervised.classifier.compiled;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.junit.Test;
+import quickml.data.AttributesMap;
+import quickml.data.ClassifierInstance;
+import quickml.supervised.calibratedPredictiveModel.CalibratedClassifier;
+import quickml.supervised.classifier.Classifier;
+import quickml.supervised.classifier.decisionTree.Tree;
+import quickml.supervised.classifier.decisionTree.TreeBuilder;
+import quickml.supervised.classifier.decisionTree.scorers.GiniImpurityScorer;
+import quickml.supervised.classifier.downsampling.DownsamplingClassifier;
+import quickml.supervised.classifier.randomForest.RandomForest;
+import quickml.supervised.classifier.randomForest.RandomForestBuilder;
+import quickml.supervised.regressionModel.IsotonicRegression.PoolAdjacentViolatorsModel;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class BoundClassifierTest {
+
+    private static final List<Serializable> CLASSIFICATIONS = Arrays.<Serializable>asList(0.0, 1.0);
+
+    private static final String[] TRAINING_COLORS = {"red", "green", "blue", "black"};
+
+    // "purple" is only in test instances, and isn't in the schema, so that it's coded as another category
+    private static final String[] TEST_COLORS = {"red", "green", "blue", "black", "purple"};
+
+    private static final FeatureSchema SCHEMA = FeatureSchema.builder()
+            .numeric("weight")
+            .categorical("color", Arrays.asList(TRAINING_COLORS))
+            .numeric("height")
+            .numeric("noise")
+            .build();
+
+    @Test
+    public void boundModelsPredictTheSameProbabilities() {
+        final List<ClassifierInstance> instances = getInstances(3000, new Random(1), TRAINING_COLORS);
+        final Tree tree = new TreeBuilder(new GiniImpurityScorer()).maxDepth(10).buildPredictiveModel(instances);
+        final RandomForest randomForest = new RandomForestBuilder(new TreeBuilder(new GiniImpurityScorer()).maxDepth(10)).numTrees(5).executorThreadCount(1).buildPredictiveModel(instances);
+        // the calibration model breaks ties between observations of the same input at random, so they're merged
+        final Map<Double, double[]> labelSumsAndCounts = Maps.newTreeMap();
+        for (ClassifierInstance instance : instances) {
+            final double probability = randomForest.getProbability(instance.getAttributes(), 1.0);
+            double[] labelSumAndCount = labelSumsAndCounts.get(probability);
+            if (labelSumAndCount == null) {
+                labelSumAndCount = new double[2];
+                labelSumsAndCounts.put(probability, labelSumAndCount);
+            }
+            labelSumAndCount[0] += (Double) instance.getLabel();
+            labelSumAndCount[1]++;
+        }
+        final List<PoolAdjacentViolatorsModel.Observation> observations = Lists.newArrayList();
+        for (Map.Entry<Double, double[]> labelSumAndCount : labelSumsAndCounts.entrySet()) {
+            final double[] value = labelSumAndCount.getValue();
+            observations.add(new PoolAdjacentViolatorsModel.Observation(labelSumAndCount.getKey(), value[0] / value[1], value[1]));
+        }
+
+        assertSameProbabilities(tree);
+        assertSameProbabilities(randomForest);
+        assertSameProbabilities(CompiledForest.compile(randomForest));
+        assertSameProbabilities(new DownsamplingClassifier(randomForest, 0.0, 1.0, 0.5));
+        assertSameProbabilities(new CalibratedClassifier(randomForest, new PoolAdjacentViolatorsModel(observations)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void attributesTheModelTestsMustBeInTheSchema() {
+        final Tree tree = new TreeBuilder(new GiniImpurityScorer()).buildPredictiveModel(getInstances(1000, new Random(2), TRAINING_COLORS));
+        BoundClassifier.bind(tree, FeatureSchema.builder().numeric("noise").build());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void attributesMustHaveTheTypeTheModelTestsThemAs() {
+        final Tree tree = new TreeBuilder(new GiniImpurityScorer()).buildPredictiveModel(getInstances(1000, new Random(3), TRAINING_COLORS));
+        BoundClassifier.bind(tree, FeatureSchema.builder().numeric("weight").numeric("color").numeric("height").numeric("noise").build());
+    }
+
+    private static void assertSameProbabilities(Classifier classifier) {
+        final BoundClassifier bound = BoundClassifier.bind(classifier, SCHEMA);
+        final FeatureVector features = SCHEMA.newFeatureVector();
+        for (ClassifierInstance instance : getInstances(500, new Random(4), TEST_COLORS)) {
+            final AttributesMap attributes = instance.getAttributes();
+            features.set(attributes);
+            for (Serializable classification : CLASSIFICATIONS) {
+                assertEquals(classifier.getProbability(attributes, classification), bound.getProbability(features, classification), 0.0);
+                assertEquals(classifier.predict(attributes).get(classification), bound.predict(features).get(classification), 0.0);
+            }
+        }
+    }
+
+    private static List<ClassifierInstance> getInstances(int numInstances, Random random, String[] colors) {
+        final List<ClassifierInstance> instances = Lists.newArrayList();
+        for (int x = 0; x < numInstances; x++) {
+            final double height = (4 * 12) + random.nextInt(3 * 12);
+            final double weight = 120 + random.nextInt(110);
+            final AttributesMap attributes = AttributesMap.newHashMap();
+            attributes.put("weight", weight);
+            attributes.put("height", height);
+            if (random.nextInt(10) > 0) {
+                attributes.put("color", colors[random.nextInt(colors.length)]);
+            }
+            if (random.nextInt(10) > 0) {
+                attributes.put("noise", random.nextDouble());
+            }
+            final boolean healthy = weight / (height * height) * 703 < 25 && !"black".equals(attributes.get("color"));
+            instances.add(new ClassifierInstance(attributes, random.nextInt(10) == 0 ^ healthy ? 1.0 : 0.0));
+        }
+        return instances;
+    }
+}
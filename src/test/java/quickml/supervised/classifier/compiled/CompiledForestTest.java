@@ -0,0 +1,79 @@
+package quickml.supervised.classifier.compiled;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.junit.Test;
+import quickml.data.AttributesMap;
+import quickml.data.ClassifierInstance;
+import quickml.supervised.classifier.TreeBuilderTestUtils;
+import quickml.supervised.classifier.decisionTree.Tree;
+import quickml.supervised.classifier.decisionTree.TreeBuilder;
+import quickml.supervised.classifier.decisionTree.scorers.GiniImpurityScorer;
+import quickml.supervised.classifier.randomForest.RandomForest;
+import quickml.supervised.classifier.randomForest.RandomForestBuilder;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class CompiledForestTest {
+
+    @Test
+    public void compiledTreePredictsTheSameProbabilities() throws Exception {
+        final List<ClassifierInstance> instances = getMixedInstances(2000, new Random(1));
+        final Tree tree = new TreeBuilder(new GiniImpurityScorer()).maxDepth(8).buildPredictiveModel(instances);
+        final CompiledForest compiled = CompiledForest.compile(tree);
+        TreeBuilderTestUtils.serializeDeserialize(compiled);
+
+        assertEquals(1, compiled.getNumTrees());
+        assertEquals(tree.node.size(), compiled.getNumNodes());
+        for (ClassifierInstance instance : getMixedInstances(500, new Random(2))) {
+            for (Serializable classification : tree.getClassifications()) {
+                assertEquals(tree.getProbability(instance.getAttributes(), classification), compiled.getProbability(instance.getAttributes(), classification), 0.0);
+            }
+            assertEquals(tree.getClassificationByMaxProb(instance.getAttributes()), compiled.getClassificationByMaxProb(instance.getAttributes()));
+        }
+    }
+
+    @Test
+    public void compiledForestPredictsTheSameProbabilities() {
+        final List<ClassifierInstance> instances = getMixedInstances(2000, new Random(3));
+        final RandomForest randomForest = new RandomForestBuilder(new TreeBuilder(new GiniImpurityScorer()).maxDepth(8)).numTrees(5).executorThreadCount(1).buildPredictiveModel(instances);
+        final CompiledForest compiled = CompiledForest.compile(randomForest);
+        final Set<String> ignored = Sets.newHashSet("color");
+
+        assertEquals(5, compiled.getNumTrees());
+        for (ClassifierInstance instance : getMixedInstances(500, new Random(4))) {
+            final AttributesMap attributes = instance.getAttributes();
+            for (Serializable classification : randomForest.getClassifications()) {
+                assertEquals(randomForest.getProbability(attributes, classification), compiled.getProbability(attributes, classification), 0.0);
+                assertEquals(randomForest.predict(attributes).get(classification), compiled.predict(attributes).get(classification), 0.0);
+                assertEquals(randomForest.getProbabilityWithoutAttributes(attributes, classification, ignored), compiled.predictWithoutAttributes(attributes, ignored).get(classification), 1e-12);
+            }
+        }
+        assertEquals(0.0, compiled.getProbability(instances.get(0).getAttributes(), "unseen"), 0.0);
+    }
+
+    private static List<ClassifierInstance> getMixedInstances(int numInstances, Random random) {
+        final String[] colors = {"red", "green", "blue", "black"};
+        final List<ClassifierInstance> instances = Lists.newArrayList();
+        for (int x = 0; x < numInstances; x++) {
+            final double height = (4 * 12) + random.nextInt(3 * 12);
+            final double weight = 120 + random.nextInt(110);
+            final String color = colors[random.nextInt(colors.length)];
+            final AttributesMap attributes = AttributesMap.newHashMap();
+            attributes.put("weight", weight);
+            attributes.put("height", height);
+            attributes.put("color", color);
+            if (random.nextInt(10) > 0) {
+                attributes.put("noise", random.nextDouble());
+            }
+            final String label = color.equals("black") ? "other" : TreeBuilderTestUtils.bmiHealthy(weight, height);
+            instances.add(new ClassifierInstance(attributes, label));
+        }
+        return instances;
+    }
+}
@@ -0,0 +1,111 @@
+package quickml.supervised.classifier.compiled;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+import quickml.data.AttributesMap;
+import quickml.data.ClassifierInstance;
+import quickml.supervised.classifier.Classifier;
+import quickml.supervised.classifier.TreeBuilderTestUtils;
+import quickml.supervised.classifier.decisionTree.Tree;
+import quickml.supervised.classifier.decisionTree.TreeBuilder;
+import quickml.supervised.classifier.decisionTree.scorers.GiniImpurityScorer;
+import quickml.supervised.classifier.randomForest.RandomForest;
+import quickml.supervised.classifier.randomForest.RandomForestBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class GeneratedForestTest {
+
+    @Test
+    public void generatedTreePredictsTheSameProbabilities() {
+        final Tree tree = new TreeBuilder(new GiniImpurityScorer()).maxDepth(20).buildPredictiveModel(getMixedInstances(5000, new Random(1)));
+        final Classifier generated = GeneratedForest.generate(tree);
+
+        // large enough that its source is split across several methods
+        assertTrue(tree.node.size() > 600);
+        assertTrue(generated instanceof GeneratedForest);
+        assertSameProbabilities(tree, generated, tree.getClassifications());
+    }
+
+    @Test
+    public void largeTreesAreSplitAcrossMethodsOfBoundedSize() {
+        final Tree tree = new TreeBuilder(new GiniImpurityScorer()).maxDepth(20).buildPredictiveModel(getMixedInstances(5000, new Random(1)));
+        final CompiledForest compiledForest = CompiledForest.compile(tree);
+        final String source = new GeneratedForest.SourceWriter(compiledForest).write("LargeTree");
+
+        final String[] methods = source.split("\n    private int node");
+        int numBranches = 0;
+        for (int method = 1; method < methods.length; method++) {
+            final int branchesInMethod = methods[method].split("\n *if \\(", -1).length - 1;
+            assertTrue("A method has " + branchesInMethod + " branches", branchesInMethod <= GeneratedForest.MAX_BRANCHES_PER_METHOD);
+            numBranches += branchesInMethod;
+        }
+        assertEquals((compiledForest.getNumNodes() - 1) / 2, numBranches);
+        assertTrue(methods.length - 1 > numBranches / GeneratedForest.MAX_BRANCHES_PER_METHOD);
+    }
+
+    @Test
+    public void generatedForestPredictsTheSameProbabilitiesAfterDeserialization() throws Exception {
+        final RandomForest randomForest = new RandomForestBuilder(new TreeBuilder(new GiniImpurityScorer()).maxDepth(12)).numTrees(5).executorThreadCount(1).buildPredictiveModel(getMixedInstances(2000, new Random(3)));
+        final Classifier generated = GeneratedForest.generate(randomForest);
+
+        assertTrue(generated instanceof GeneratedForest);
+        assertSameProbabilities(randomForest, generated, randomForest.getClassifications());
+        assertSameProbabilities(randomForest, serializeDeserialize(generated), randomForest.getClassifications());
+    }
+
+    @Test
+    public void fallsBackToTheModelWithoutACompiler() {
+        final Tree tree = new TreeBuilder(new GiniImpurityScorer()).maxDepth(4).buildPredictiveModel(getMixedInstances(500, new Random(5)));
+
+        assertSame(tree, GeneratedForest.generate(CompiledForest.compile(tree), tree, null));
+    }
+
+    private static void assertSameProbabilities(Classifier expected, Classifier actual, Iterable<Serializable> classifications) {
+        for (ClassifierInstance instance : getMixedInstances(500, new Random(2))) {
+            final AttributesMap attributes = instance.getAttributes();
+            for (Serializable classification : classifications) {
+                assertEquals(expected.getProbability(attributes, classification), actual.getProbability(attributes, classification), 0.0);
+            }
+        }
+    }
+
+    private static Classifier serializeDeserialize(Classifier classifier) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(classifier);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (Classifier) in.readObject();
+        }
+    }
+
+    private static List<ClassifierInstance> getMixedInstances(int numInstances, Random random) {
+        final String[] colors = {"red", "green", "blue", "black"};
+        final List<ClassifierInstance> instances = Lists.newArrayList();
+        for (int x = 0; x < numInstances; x++) {
+            final double height = (4 * 12) + random.nextInt(3 * 12);
+            final double weight = 120 + random.nextInt(110);
+            final String color = colors[random.nextInt(colors.length)];
+            final AttributesMap attributes = AttributesMap.newHashMap();
+            attributes.put("weight", weight);
+            attributes.put("height", height);
+            attributes.put("color", color);
+            attributes.put("noise", random.nextDouble());
+            // some noise in the labels, so that trees keep splitting
+            final String label = random.nextInt(5) == 0 ? "noise" : color.equals("black") ? "other" : TreeBuilderTestUtils.bmiHealthy(weight, height);
+            instances.add(new ClassifierInstance(attributes, label));
+        }
+        return instances;
+    }
+}
@@ -0,0 +1,94 @@
+package quickml.supervised.classifier.decisionTree;
+
+import com.google.common.collect.Lists;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import quickml.data.AttributesMap;
+import quickml.data.ClassifierInstance;
+import quickml.data.ColumnarTrainingData;
+import quickml.supervised.classifier.decisionTree.tree.ClassificationCounter;
+import quickml.supervised.classifier.decisionTree.tree.OrdinalClassificationCounter;
+
+import java.util.List;
+
+public class OrdinalClassificationCounterTest {
+
+    @Test
+    public void testAddAndSubtractInPlace() {
+        OrdinalClassificationCounter a = new OrdinalClassificationCounter(2);
+        a.addClassification(0, 1.0);
+        a.addClassification(1, 2.5);
+        OrdinalClassificationCounter b = new OrdinalClassificationCounter(2);
+        b.addClassification(0, 0.5);
+        b.addClassification(1, 1.0);
+        a.add(b);
+        Assert.assertEquals(a.getCount(0), 1.5);
+        Assert.assertEquals(a.getCount(1), 3.5);
+        Assert.assertEquals(a.getTotal(), 5.0);
+        a.subtract(b);
+        a.subtract(b);
+        Assert.assertEquals(a.getCount(0), 0.5);
+        Assert.assertEquals(a.getCount(1), 1.5);
+        Assert.assertEquals(a.getTotal(), 2.0);
+    }
+
+    @Test
+    public void testSetToDifference() {
+        OrdinalClassificationCounter a = new OrdinalClassificationCounter(2);
+        a.addClassification(0, 1.0);
+        a.addClassification(1, 2.5);
+        OrdinalClassificationCounter b = new OrdinalClassificationCounter(2);
+        b.addClassification(1, 1.0);
+        OrdinalClassificationCounter difference = new OrdinalClassificationCounter(2);
+        difference.addClassification(0, 7.0);
+        difference.setToDifference(a, b);
+        Assert.assertEquals(difference.getCount(0), 1.0);
+        Assert.assertEquals(difference.getCount(1), 1.5);
+        Assert.assertEquals(difference.getTotal(), 2.5);
+    }
+
+    @Test
+    public void testAddAllMergesCountersByIndex() {
+        OrdinalClassificationCounter a = new OrdinalClassificationCounter(2);
+        a.addClassification(0, 1.0);
+        OrdinalClassificationCounter b = new OrdinalClassificationCounter(2);
+        b.addClassification(1, 2.0);
+        OrdinalClassificationCounter c = new OrdinalClassificationCounter(2);
+        c.addClassification(0, 3.0);
+        OrdinalClassificationCounter[] counters = {a, null, null};
+        OrdinalClassificationCounter.addAll(counters, new OrdinalClassificationCounter[]{b, c, null});
+        Assert.assertEquals(counters[0].getCount(0), 1.0);
+        Assert.assertEquals(counters[0].getCount(1), 2.0);
+        Assert.assertEquals(counters[1].getTotal(), 3.0);
+        Assert.assertNull(counters[2]);
+    }
+
+    @Test
+    public void testScaleLabel() {
+        OrdinalClassificationCounter a = new OrdinalClassificationCounter(2);
+        a.addClassification(0, 1.0);
+        a.addClassification(1, 2.0);
+        a.scale(1, 10);
+        Assert.assertEquals(a.getCount(0), 1.0);
+        Assert.assertEquals(a.getCount(1), 20.0);
+        Assert.assertEquals(a.getTotal(), 21.0);
+    }
+
+    @Test
+    public void testCountAllAndConvert() {
+        List<ClassifierInstance> instances = Lists.newArrayList();
+        instances.add(new ClassifierInstance(AttributesMap.newHashMap(), "dog", 1.0));
+        instances.add(new ClassifierInstance(AttributesMap.newHashMap(), "cat", 0.5));
+        instances.add(new ClassifierInstance(AttributesMap.newHashMap(), "dog", 2.0));
+        ColumnarTrainingData trainingData = ColumnarTrainingData.create(instances);
+
+        OrdinalClassificationCounter counter = OrdinalClassificationCounter.countAll(trainingData, new int[]{0, 1, 2}, 1, 3);
+        ClassificationCounter converted = counter.toClassificationCounter(trainingData);
+        Assert.assertEquals(converted.getCount("dog"), 2.0);
+        Assert.assertEquals(converted.getCount("cat"), 0.5);
+        Assert.assertEquals(converted.getTotal(), 2.5);
+
+        counter.subtract(OrdinalClassificationCounter.countAll(trainingData, new int[]{1}, 0, 1));
+        Assert.assertFalse(counter.toClassificationCounter(trainingData).allClassifications().contains("cat"));
+    }
+}
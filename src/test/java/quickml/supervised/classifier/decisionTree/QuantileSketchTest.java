@@ -0,0 +1,94 @@
+package quickml.supervised.classifier.decisionTree;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import quickml.supervised.classifier.decisionTree.tree.QuantileSketch;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class QuantileSketchTest {
+
+    @Test
+    public void testExactBelowCapacity() {
+        QuantileSketch sketch = new QuantileSketch(101);
+        for (int value = 99; value >= 0; value--) {
+            sketch.add(value);
+        }
+        Assert.assertEquals(sketch.size(), 100);
+        Assert.assertEquals(Arrays.toString(sketch.getQuantiles(3)), Arrays.toString(new double[]{25, 50, 75}));
+    }
+
+    @Test
+    public void testQuantilesOfLargeStreamAreClose() {
+        QuantileSketch sketch = new QuantileSketch(200);
+        Random random = new Random(1);
+        int n = 1000000;
+        for (int i = 0; i < n; i++) {
+            sketch.add(random.nextInt(n));
+        }
+        double[] quantiles = sketch.getQuantiles(9);
+        for (int q = 0; q < quantiles.length; q++) {
+            Assert.assertEquals(quantiles[q], (q + 1) * n / 10.0, 0.02 * n);
+        }
+    }
+
+    @Test
+    public void testMergedSketchesMatchSingleSketch() {
+        QuantileSketch single = new QuantileSketch(200);
+        QuantileSketch first = new QuantileSketch(200);
+        QuantileSketch second = new QuantileSketch(200);
+        Random random = new Random(2);
+        int n = 100000;
+        for (int i = 0; i < n; i++) {
+            double value = random.nextDouble();
+            single.add(value);
+            (i % 2 == 0 ? first : second).add(value);
+        }
+        first.merge(second);
+        Assert.assertEquals(first.size(), n);
+        double[] merged = first.getQuantiles(9);
+        double[] expected = single.getQuantiles(9);
+        for (int q = 0; q < merged.length; q++) {
+            Assert.assertEquals(merged[q], expected[q], 0.03);
+        }
+    }
+
+    @Test
+    public void testWeightedValuesMatchRepeatedValues() {
+        QuantileSketch repeated = new QuantileSketch(1000);
+        QuantileSketch weighted = new QuantileSketch(1000);
+        for (int value = 0; value < 50; value++) {
+            final int weight = 1 + (value * 7) % 5;
+            for (int i = 0; i < weight; i++) {
+                repeated.add(value);
+            }
+            weighted.add(value, weight);
+        }
+        Assert.assertEquals(Arrays.toString(weighted.getQuantiles(9)), Arrays.toString(repeated.getQuantiles(9)));
+    }
+
+    @Test
+    public void testQuantilesOfLargeWeightedStreamAreClose() {
+        QuantileSketch sketch = new QuantileSketch(200);
+        Random random = new Random(3);
+        int n = 1000000;
+        for (int i = 0; i < n; i++) {
+            // values below n / 2 count three times as much as those above it
+            final int value = random.nextInt(n);
+            final double weight = value < n / 2 ? 3 : 1;
+            sketch.add(value, weight);
+        }
+        Assert.assertEquals(sketch.size(), n);
+        double[] quantiles = sketch.getQuantiles(3);
+        // three quarters of the weight is below n / 2, spread evenly
+        Assert.assertEquals(quantiles[0], n / 6.0, 0.02 * n);
+        Assert.assertEquals(quantiles[1], n / 3.0, 0.02 * n);
+        Assert.assertEquals(quantiles[2], n / 2.0, 0.02 * n);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testCantMergeDifferentCapacities() {
+        new QuantileSketch(100).merge(new QuantileSketch(200));
+    }
+}
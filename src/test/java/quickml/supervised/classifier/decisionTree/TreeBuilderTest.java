@@ -9,12 +9,20 @@ import quickml.collections.MapUtils;
 import quickml.data.AttributesMap;
 import quickml.data.PredictionMap;
 import quickml.data.ClassifierInstance;
+import quickml.data.ColumnarTrainingData;
 import quickml.supervised.classifier.TreeBuilderTestUtils;
 import quickml.supervised.classifier.decisionTree.scorers.SplitDiffScorer;
+import quickml.supervised.classifier.decisionTree.tree.Branch;
+import quickml.supervised.classifier.decisionTree.tree.CategoricalBranch;
 import quickml.supervised.classifier.decisionTree.tree.Node;
+import quickml.supervised.classifier.decisionTree.tree.NumericBins;
+import quickml.supervised.classifier.decisionTree.tree.NumericBranch;
+import quickml.supervised.classifier.decisionTree.tree.attributeIgnoringStrategies.RandomFeatureSubspace;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import static org.junit.Assert.*;
@@ -85,6 +93,221 @@ public class TreeBuilderTest {
 
     }
 
+    @Test
+    public void numericSplitIsFoundAtBestThreshold() {
+        final List<ClassifierInstance> instances = Lists.newArrayList();
+        for (int x = 0; x < 1000; x++) {
+            AttributesMap attributes = AttributesMap.newHashMap();
+            attributes.put("x", (double) x);
+            instances.add(new ClassifierInstance(attributes, x > 500 ? "high" : "low"));
+        }
+        TreeBuilder<ClassifierInstance> treeBuilder = new TreeBuilder<ClassifierInstance>().maxDepth(1);
+        treeBuilder.ordinalTestSplits(2);
+        Tree tree = treeBuilder.buildPredictiveModel(instances);
+        assertTrue(tree.node instanceof NumericBranch);
+        assertEquals(500.0, ((NumericBranch) tree.node).threshold, 0.0);
+        AttributesMap attributes = AttributesMap.newHashMap();
+        attributes.put("x", 700.0);
+        assertEquals(1.0, tree.getProbability(attributes, "high"), 0.0);
+        attributes.put("x", 300.0);
+        assertEquals(1.0, tree.getProbability(attributes, "low"), 0.0);
+    }
+
+    @Test
+    public void histogramSplitsFindBandOfValues() {
+        final List<ClassifierInstance> instances = Lists.newArrayList();
+        for (int x = 0; x < 1000; x++) {
+            AttributesMap attributes = AttributesMap.newHashMap();
+            attributes.put("x", (double) x);
+            instances.add(new ClassifierInstance(attributes, x > 250 && x <= 625 ? "in" : "out"));
+        }
+        TreeBuilder<ClassifierInstance> treeBuilder = new TreeBuilder<ClassifierInstance>().maxDepth(2).histogramBins(16);
+        Tree tree = treeBuilder.buildPredictiveModel(instances);
+        AttributesMap attributes = AttributesMap.newHashMap();
+        for (double x : new double[]{0, 250, 251, 500, 625, 626, 999}) {
+            attributes.put("x", x);
+            assertEquals(x > 250 && x <= 625 ? "in" : "out", tree.getClassificationByMaxProb(attributes));
+        }
+    }
+
+    @Test
+    public void twoClassCategoricalSplitGroupsValuesByMinorityProbability() {
+        final List<ClassifierInstance> instances = Lists.newArrayList();
+        final String[] colors = {"red", "green", "blue", "black", "white"};
+        for (int i = 0; i < 1000; i++) {
+            AttributesMap attributes = AttributesMap.newHashMap();
+            final String color = colors[i % colors.length];
+            attributes.put("color", color);
+            final boolean mostlyRare = color.equals("red") || color.equals("blue");
+            instances.add(new ClassifierInstance(attributes, mostlyRare == (i % 10 != 0) ? "rare" : "common"));
+        }
+        Tree tree = new TreeBuilder<ClassifierInstance>().maxDepth(1).minCategoricalAttributeValueOccurances(0).buildPredictiveModel(instances);
+        assertTrue(tree.node instanceof CategoricalBranch);
+        assertEquals(Sets.<Object>newHashSet("red", "blue"), ((CategoricalBranch) tree.node).inSet);
+    }
+
+    @Test
+    public void oneVsRestCategoricalSplitSeparatesLargestClass() {
+        final List<ClassifierInstance> instances = Lists.newArrayList();
+        final String[] labelsByValue = {"a", "a", "a", "b", "b", "c"};
+        for (int i = 0; i < 1200; i++) {
+            AttributesMap attributes = AttributesMap.newHashMap();
+            attributes.put("v", "v" + i % labelsByValue.length);
+            instances.add(new ClassifierInstance(attributes, labelsByValue[i % labelsByValue.length]));
+        }
+        Tree tree = new TreeBuilder<ClassifierInstance>().maxDepth(1).oneVsRestCategoricalSplits(true).buildPredictiveModel(instances);
+        assertTrue(tree.node instanceof CategoricalBranch);
+        final Set<Object> inSet = Sets.<Object>newHashSet(((CategoricalBranch) tree.node).inSet);
+        assertTrue(inSet.toString(), inSet.equals(Sets.<Object>newHashSet("v0", "v1", "v2")) || inSet.equals(Sets.<Object>newHashSet("v3", "v4", "v5")));
+    }
+
+    @Test
+    public void extraTreesLearnFromRandomSplits() {
+        final Random random = new Random(1);
+        final List<ClassifierInstance> instances = Lists.newArrayList();
+        for (int i = 0; i < 4000; i++) {
+            AttributesMap attributes = AttributesMap.newHashMap();
+            final double x = random.nextInt(1000);
+            final String color = "color" + random.nextInt(6);
+            attributes.put("x", x);
+            attributes.put("color", color);
+            attributes.put("noise", (double) random.nextInt(1000));
+            instances.add(new ClassifierInstance(attributes, x > 500 || color.equals("color0") ? "yes" : "no"));
+        }
+        for (int histogramBins : new int[]{0, 32}) {
+            final Tree tree = new TreeBuilder<ClassifierInstance>().maxDepth(12).histogramBins(histogramBins).extraTrees(true).buildPredictiveModel(instances);
+            int correct = 0;
+            for (ClassifierInstance instance : instances) {
+                if (tree.getClassificationByMaxProb(instance.getAttributes()).equals(instance.getLabel())) {
+                    correct++;
+                }
+            }
+            assertTrue("Only " + correct + " correct with " + histogramBins + " bins", correct > 0.9 * instances.size());
+        }
+    }
+
+    @Test
+    public void extraTreesAreReproducibleWithASeed() {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(2000);
+        for (int histogramBins : new int[]{0, 32}) {
+            MapUtils.random.setSeed(3);
+            final String tree = new TreeBuilder<ClassifierInstance>().maxDepth(8).histogramBins(histogramBins).extraTrees(true).buildPredictiveModel(instances).toString();
+            MapUtils.random.setSeed(3);
+            assertEquals(tree, new TreeBuilder<ClassifierInstance>().maxDepth(8).histogramBins(histogramBins).extraTrees(true).buildPredictiveModel(instances).toString());
+        }
+    }
+
+    @Test
+    public void sampledSplitSearchFindsSameRootSplit() {
+        final Random random = new Random(2);
+        final List<ClassifierInstance> instances = Lists.newArrayList();
+        for (int i = 0; i < 50000; i++) {
+            AttributesMap attributes = AttributesMap.newHashMap();
+            final double x = random.nextInt(1000);
+            attributes.put("x", x);
+            attributes.put("noise", (double) random.nextInt(1000));
+            instances.add(new ClassifierInstance(attributes, random.nextDouble() < (x > 800 ? 0.05 : 0.005) ? "click" : "noClick"));
+        }
+        final ColumnarTrainingData trainingData = ColumnarTrainingData.create(instances);
+        final Tree tree = new TreeBuilder<ClassifierInstance>().maxDepth(1).ordinalTestSplits(11).buildPredictiveModel(trainingData);
+        final Tree sampledTree = new TreeBuilder<ClassifierInstance>().maxDepth(1).ordinalTestSplits(11).splitSearchSampleSize(5000).buildPredictiveModel(trainingData);
+        assertTrue(tree.node instanceof NumericBranch);
+        assertTrue(sampledTree.node instanceof NumericBranch);
+        assertEquals("x", ((NumericBranch) sampledTree.node).attribute);
+        assertEquals(((NumericBranch) tree.node).threshold, ((NumericBranch) sampledTree.node).threshold, 0.0);
+        // the leaves are made from all of the rows, not just the sample
+        assertEquals(tree.toString(), sampledTree.toString());
+    }
+
+    @Test
+    public void parallelismDoesNotChangeTree() {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getIntegerInstances(10000);
+        final String sequentialTree = new TreeBuilder<ClassifierInstance>().maxDepth(8).histogramBins(64).buildPredictiveModel(instances).toString();
+        assertEquals(sequentialTree, new TreeBuilder<ClassifierInstance>().maxDepth(8).histogramBins(64).attributeParallelism(4).buildPredictiveModel(instances).toString());
+        assertEquals(sequentialTree, new TreeBuilder<ClassifierInstance>().maxDepth(8).histogramBins(64).subtreeParallelism(4).buildPredictiveModel(instances).toString());
+        assertEquals(sequentialTree, new TreeBuilder<ClassifierInstance>().maxDepth(8).histogramBins(64).attributeParallelism(4).subtreeParallelism(4).buildPredictiveModel(instances).toString());
+        // without histograms, each subtree is given its own copy of the candidate splits
+        final String sequentialTreeWithSplits = new TreeBuilder<ClassifierInstance>().maxDepth(8).buildPredictiveModel(instances).toString();
+        assertEquals(sequentialTreeWithSplits, new TreeBuilder<ClassifierInstance>().maxDepth(8).subtreeParallelism(4).buildPredictiveModel(instances).toString());
+    }
+
+    @Test
+    public void shardedNodeStatisticsDoNotDependOnParallelism() {
+        // enough instances for the root's statistics to be accumulated in several shards
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getIntegerInstances(150000);
+        for (ClassifierInstance instance : instances) {
+            instance.getAttributes().put("weightBand", "band" + ((Double) instance.getAttributes().get("weight")).intValue() / 25);
+        }
+        final ColumnarTrainingData trainingData = ColumnarTrainingData.create(instances);
+        for (int histogramBins : new int[]{0, 64}) {
+            final String sequentialTree = new TreeBuilder<ClassifierInstance>().maxDepth(4).histogramBins(histogramBins).buildPredictiveModel(trainingData).toString();
+            assertEquals(sequentialTree, new TreeBuilder<ClassifierInstance>().maxDepth(4).histogramBins(histogramBins).attributeParallelism(4).buildPredictiveModel(trainingData).toString());
+        }
+    }
+
+    @Test
+    public void levelWiseGrowthBuildsSameTreeAsDepthFirst() {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getIntegerInstances(10000);
+        for (ClassifierInstance instance : instances) {
+            // a categorical attribute too, which level-wise growth takes histograms of
+            instance.getAttributes().put("weightBand", "band" + ((Double) instance.getAttributes().get("weight")).intValue() / 25);
+        }
+        final String depthFirstTree = new TreeBuilder<ClassifierInstance>().maxDepth(8).minLeafInstances(20).histogramBins(64).buildPredictiveModel(instances).toString();
+        assertEquals(depthFirstTree, new TreeBuilder<ClassifierInstance>().maxDepth(8).minLeafInstances(20).histogramBins(64).levelWise(true).buildPredictiveModel(instances).toString());
+        assertEquals(depthFirstTree, new TreeBuilder<ClassifierInstance>().maxDepth(8).minLeafInstances(20).histogramBins(64).levelWise(true).subtreeParallelism(4).buildPredictiveModel(instances).toString());
+    }
+
+    @Test
+    public void memoryMappedTrainingDataBuildsSameTreeAsInMemory() throws Exception {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getIntegerInstances(5000);
+        for (ClassifierInstance instance : instances) {
+            instance.getAttributes().put("weightBand", "band" + ((Double) instance.getAttributes().get("weight")).intValue() / 25);
+        }
+        final File dataFile = File.createTempFile("trainingData", ".bin");
+        dataFile.deleteOnExit();
+        final File binsFile = File.createTempFile("numericBins", ".bin");
+        binsFile.deleteOnExit();
+        ColumnarTrainingData.write(instances, dataFile);
+        final ColumnarTrainingData mappedData = ColumnarTrainingData.map(dataFile);
+
+        final TreeBuilder<ClassifierInstance> treeBuilder = new TreeBuilder<ClassifierInstance>().maxDepth(6).histogramBins(32).levelWise(true);
+        final String inMemoryTree = treeBuilder.buildPredictiveModel(instances).toString();
+        assertEquals(inMemoryTree, treeBuilder.buildPredictiveModel(mappedData, NumericBins.create(mappedData, 32, binsFile)).toString());
+    }
+
+    @Test
+    public void subtreeParallelismBuildsTreeWithSampledSplits() throws Exception {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(20000);
+        final Tree tree = new TreeBuilder<ClassifierInstance>().maxDepth(10).subtreeParallelism(4).buildPredictiveModel(instances);
+        TreeBuilderTestUtils.serializeDeserialize(tree.node);
+        assertTrue("Tree should have split below its root", tree.node.size() > 3);
+    }
+
+    @Test
+    public void treeScopedFeatureSubspaceOnlySplitsOnSampledAttributes() {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getIntegerInstances(5000);
+        final int numAttributes = ColumnarTrainingData.create(instances).getNumAttributes();
+        final int subspaceSize = (int) Math.round(numAttributes * 0.3);
+        for (int histogramBins : new int[]{0, 32}) {
+            for (int i = 0; i < 5; i++) {
+                final Tree tree = new TreeBuilder<ClassifierInstance>().maxDepth(8).histogramBins(histogramBins)
+                        .attributeIgnoringStrategy(new RandomFeatureSubspace(0.7, RandomFeatureSubspace.Scope.TREE)).buildPredictiveModel(instances);
+                final Set<String> splitAttributes = Sets.newHashSet();
+                collectSplitAttributes(tree.node, splitAttributes);
+                assertTrue(splitAttributes.toString(), splitAttributes.size() <= subspaceSize);
+            }
+        }
+    }
+
+    private static void collectSplitAttributes(Node node, Set<String> splitAttributes) {
+        if (node instanceof Branch) {
+            splitAttributes.add(((Branch) node).attribute);
+            collectSplitAttributes(((Branch) node).trueChild, splitAttributes);
+            collectSplitAttributes(((Branch) node).falseChild, splitAttributes);
+        }
+    }
+
+
     //TODO: fails randomly.  fix it.
     @Ignore
     @Test
@@ -4,10 +4,12 @@ import com.beust.jcommander.internal.Lists;
 import com.beust.jcommander.internal.Sets;
 import org.junit.Test;
 import org.testng.Assert;
+import quickml.collections.MapUtils;
 import quickml.supervised.classifier.decisionTree.tree.attributeIgnoringStrategies.AttributeIgnoringStrategy;
 import quickml.supervised.classifier.decisionTree.tree.attributeIgnoringStrategies.CompositeAttributeIgnoringStrategy;
 import quickml.supervised.classifier.decisionTree.tree.attributeIgnoringStrategies.IgnoreAttributesInSet;
 import quickml.supervised.classifier.decisionTree.tree.attributeIgnoringStrategies.IgnoreAttributesWithConstantProbability;
+import quickml.supervised.classifier.decisionTree.tree.attributeIgnoringStrategies.RandomFeatureSubspace;
 
 import java.util.Arrays;
 import java.util.List;
@@ -71,6 +73,29 @@ public class AttributeIgnoringStrategiesTests {
 
     }
 
+    @Test
+    public void RandomFeatureSubspaceTest() {
+        RandomFeatureSubspace randomFeatureSubspace = new RandomFeatureSubspace(0.7, RandomFeatureSubspace.Scope.NODE);
+        for (int i = 0; i < 100; i++) {
+            int[] subspace = randomFeatureSubspace.sampleSubspace(10);
+            Assert.assertEquals(subspace.length, 3);
+            for (int j = 1; j < subspace.length; j++) {
+                Assert.assertTrue(subspace[j] > subspace[j - 1]);
+            }
+            Assert.assertTrue(subspace[0] >= 0 && subspace[subspace.length - 1] < 10);
+        }
+        Assert.assertEquals(randomFeatureSubspace.sampleSubspace(1).length, 1);
+    }
+
+    @Test
+    public void RandomFeatureSubspaceIsReproducibleTest() {
+        RandomFeatureSubspace randomFeatureSubspace = new RandomFeatureSubspace(0.5, RandomFeatureSubspace.Scope.NODE);
+        MapUtils.random.setSeed(17);
+        int[] subspace = randomFeatureSubspace.sampleSubspace(20);
+        MapUtils.random.setSeed(17);
+        Assert.assertEquals(randomFeatureSubspace.copy().sampleSubspace(20), subspace);
+    }
+
     private int getNumIgnored(AttributeIgnoringStrategy attributeIgnoringStrategy) {
         int numIgnored = 0;
         List<String> attributes = Arrays.asList("domain", "creativeId", "region", "hourOfDay");
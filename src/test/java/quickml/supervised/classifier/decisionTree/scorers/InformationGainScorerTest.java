@@ -25,4 +25,10 @@ public class InformationGainScorerTest {
         InformationGainScorer scorer = new InformationGainScorer();
         Assert.assertEquals(scorer.scoreSplit(a, b), 1.0);
     }
+
+    @Test
+    public void pureSplitFromPrimitiveCountsTest() {
+        InformationGainScorer scorer = new InformationGainScorer();
+        Assert.assertEquals(scorer.scoreSplit(new double[]{4, 0}, 4, new double[]{0, 4}, 4), 1.0);
+    }
 }
@@ -21,4 +21,17 @@ public class MSEScorerTest {
         MSEScorer mseScorer = new MSEScorer(MSEScorer.CrossValidationCorrection.FALSE);
         Assert.assertTrue(Math.abs(mseScorer.scoreSplit(a, b)- 0.021776929) < 0.000000001);
     }
+
+    @Test
+    public void primitiveScoreMatchesClassificationCounterScore() {
+        ClassificationCounter a = new ClassificationCounter();
+        a.addClassification("a", 4);
+        a.addClassification("b", 9);
+        ClassificationCounter b = new ClassificationCounter();
+        b.addClassification("b", 9);
+        b.addClassification("c", 6);
+        MSEScorer mseScorer = new MSEScorer(MSEScorer.CrossValidationCorrection.FALSE);
+        double primitiveScore = mseScorer.scoreSplit(new double[]{4, 9, 0}, 13, new double[]{0, 9, 6}, 15);
+        Assert.assertEquals(primitiveScore, mseScorer.scoreSplit(a, b), 0.000000001);
+    }
 }
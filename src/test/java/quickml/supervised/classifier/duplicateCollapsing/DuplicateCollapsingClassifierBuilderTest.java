@@ -0,0 +1,85 @@
+package quickml.supervised.classifier.duplicateCollapsing;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+import quickml.data.AttributesMap;
+import quickml.data.ClassifierInstance;
+import quickml.supervised.classifier.decisionTree.Tree;
+import quickml.supervised.classifier.decisionTree.TreeBuilder;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class DuplicateCollapsingClassifierBuilderTest {
+
+    @Test
+    public void duplicatesAreCollapsedIntoSummedWeights() {
+        List<ClassifierInstance> instances = Lists.newArrayList();
+        instances.add(instance("red", "small", "yes", 1.0));
+        instances.add(instance("red", "small", "yes", 2.0));
+        instances.add(instance("red", "small", "no", 1.0));
+        instances.add(instance("blue", "small", "yes", 0.5));
+        instances.add(instance("red", "small", "yes", 1.0));
+
+        List<ClassifierInstance> collapsed = DuplicateCollapsingClassifierBuilder.collapseDuplicates(instances);
+
+        assertEquals(3, collapsed.size());
+        assertEquals("yes", collapsed.get(0).getLabel());
+        assertEquals(4.0, collapsed.get(0).getWeight(), 0.0);
+        assertEquals("no", collapsed.get(1).getLabel());
+        assertEquals(1.0, collapsed.get(1).getWeight(), 0.0);
+        assertEquals("blue", collapsed.get(2).getAttributes().get("color"));
+        assertEquals(0.5, collapsed.get(2).getWeight(), 0.0);
+    }
+
+    @Test
+    public void treeOfCollapsedCategoricalDataIsTheSame() {
+        final String[] colors = {"red", "green", "blue", "black"};
+        final String[] sizes = {"small", "medium", "large"};
+        List<ClassifierInstance> instances = Lists.newArrayList();
+        for (int i = 0; i < 6000; i++) {
+            final String color = colors[i % colors.length];
+            final String size = sizes[(i / 7) % sizes.length];
+            final boolean yes = (color.equals("red") || size.equals("large")) == (i % 5 != 0);
+            instances.add(instance(color, size, yes ? "yes" : "no", 1.0));
+        }
+        final TreeBuilder<ClassifierInstance> treeBuilder = new TreeBuilder<ClassifierInstance>().maxDepth(4);
+        final Tree tree = treeBuilder.buildPredictiveModel(instances);
+        final Tree collapsedTree = new DuplicateCollapsingClassifierBuilder<>(treeBuilder).buildPredictiveModel(instances);
+        assertEquals(tree.toString(), collapsedTree.toString());
+    }
+
+    @Test
+    public void treeOfCollapsedNumericDataIsTheSame() {
+        List<ClassifierInstance> instances = Lists.newArrayList();
+        for (int i = 0; i < 900; i++) {
+            final int age = (i * 7) % 20;
+            final int height = (i / 3) % 15;
+            final boolean yes = (age > 12 || height < 4) == (i % 6 != 0);
+            instances.add(numericInstance(age, height, yes ? "yes" : "no"));
+        }
+        final TreeBuilder<ClassifierInstance> treeBuilder = new TreeBuilder<ClassifierInstance>().maxDepth(5).minLeafInstances(40);
+        assertEquals(treeBuilder.buildPredictiveModel(instances).toString(),
+                new DuplicateCollapsingClassifierBuilder<>(treeBuilder).buildPredictiveModel(instances).toString());
+        // histogram bins of fewer than the distinct values are weighted quantiles too
+        final TreeBuilder<ClassifierInstance> histogramTreeBuilder = new TreeBuilder<ClassifierInstance>().maxDepth(5).minLeafInstances(40)
+                .histogramBins(8).levelWise(true);
+        assertEquals(histogramTreeBuilder.buildPredictiveModel(instances).toString(),
+                new DuplicateCollapsingClassifierBuilder<>(histogramTreeBuilder).buildPredictiveModel(instances).toString());
+    }
+
+    private static ClassifierInstance numericInstance(int age, int height, String label) {
+        AttributesMap attributes = AttributesMap.newHashMap();
+        attributes.put("age", age);
+        attributes.put("height", height);
+        return new ClassifierInstance(attributes, label, 1.0);
+    }
+
+    private static ClassifierInstance instance(String color, String size, String label, double weight) {
+        AttributesMap attributes = AttributesMap.newHashMap();
+        attributes.put("color", color);
+        attributes.put("size", size);
+        return new ClassifierInstance(attributes, label, weight);
+    }
+}
@@ -0,0 +1,117 @@
+package quickml.supervised.classifier.randomForest;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import quickml.data.AttributesMap;
+import quickml.data.BatchPredictions;
+import quickml.data.ClassifierInstance;
+import quickml.data.PredictionMap;
+import quickml.supervised.InstanceLoader;
+import quickml.supervised.classifier.TreeBuilderTestUtils;
+import quickml.supervised.classifier.decisionTree.Tree;
+import quickml.supervised.classifier.decisionTree.TreeBuilder;
+import quickml.supervised.classifier.decisionTree.scorers.GiniImpurityScorer;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+public class RandomForestTest {
+
+    @Test
+    public void batchPredictionsMatchPredict() {
+        final RandomForest randomForest = new RandomForestBuilder(new TreeBuilder(new GiniImpurityScorer())).numTrees(6).executorThreadCount(1).buildPredictiveModel(TreeBuilderTestUtils.getInstances(2000));
+        final List<AttributesMap> batch = getBatch(500);
+
+        final BatchPredictions predictions = randomForest.predictBatch(batch);
+
+        Assert.assertEquals(predictions.size(), batch.size());
+        for (int instance = 0; instance < batch.size(); instance++) {
+            for (Serializable classification : randomForest.getClassifications()) {
+                Assert.assertEquals(predictions.getPrediction(instance).get(classification), randomForest.predict(batch.get(instance)).get(classification));
+            }
+        }
+    }
+
+    @Test
+    public void batchPredictionsOfManyClassificationsMatchPredict() throws IOException {
+        final List<ClassifierInstance> instances = InstanceLoader.getIrisInstances();
+        final RandomForest randomForest = new RandomForestBuilder(new TreeBuilder(new GiniImpurityScorer())).numTrees(6).executorThreadCount(1).buildPredictiveModel(instances);
+        final List<AttributesMap> batch = Lists.newArrayList();
+        for (ClassifierInstance instance : instances) {
+            batch.add(instance.getAttributes());
+        }
+        Assert.assertTrue(randomForest.getClassifications().size() > 2);
+
+        final BatchPredictions predictions = randomForest.predictBatch(batch);
+
+        for (int instance = 0; instance < batch.size(); instance++) {
+            for (Serializable classification : randomForest.getClassifications()) {
+                Assert.assertEquals(predictions.getProbability(instance, classification), randomForest.predict(batch.get(instance)).get(classification));
+            }
+        }
+    }
+
+    @Test
+    public void largeBatchesArePredictedByBlocksOfTrees() {
+        final RandomForest randomForest = new RandomForestBuilder(new TreeBuilder(new GiniImpurityScorer())).numTrees(6).executorThreadCount(1).buildPredictiveModel(TreeBuilderTestUtils.getInstances(2000));
+        final List<AttributesMap> batch = getBatch(RandomForest.MIN_INSTANCES_TO_PREDICT_IN_PARALLEL);
+
+        final BatchPredictions predictions = randomForest.predictBatch(batch, 3);
+
+        for (int instance = 0; instance < batch.size(); instance++) {
+            for (Serializable classification : randomForest.getClassifications()) {
+                Assert.assertEquals(predictions.getProbability(instance, classification), randomForest.predict(batch.get(instance)).get(classification), 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void predictAveragesTheTreesPredictions() {
+        final RandomForest randomForest = new RandomForestBuilder(new TreeBuilder(new GiniImpurityScorer())).numTrees(6).executorThreadCount(1).buildPredictiveModel(TreeBuilderTestUtils.getInstances(2000));
+
+        for (AttributesMap attributes : getBatch(200)) {
+            final PredictionMap prediction = randomForest.predict(attributes);
+            final Map<Serializable, Double> sums = Maps.newHashMap();
+            for (Tree tree : randomForest.trees) {
+                for (Map.Entry<Serializable, Double> entry : tree.predict(attributes).entrySet()) {
+                    final Double sum = sums.get(entry.getKey());
+                    sums.put(entry.getKey(), (sum == null ? 0.0 : sum) + entry.getValue());
+                }
+            }
+            Assert.assertEquals(prediction.keySet(), sums.keySet());
+            for (Map.Entry<Serializable, Double> sum : sums.entrySet()) {
+                Assert.assertEquals(prediction.get(sum.getKey()), sum.getValue() / randomForest.trees.size());
+            }
+        }
+    }
+
+    @Test
+    public void treesShareTheForestsDictionary() {
+        final RandomForest randomForest = new RandomForestBuilder(new TreeBuilder(new GiniImpurityScorer())).numTrees(6).executorThreadCount(1).buildPredictiveModel(TreeBuilderTestUtils.getInstances(2000));
+        final AttributesMap attributes = getBatch(1).get(0);
+        // a tree predicting on its own first mustn't leave the leaves numbering classifications by its own dictionary
+        randomForest.trees.get(0).predict(attributes);
+        final PredictionMap prediction = randomForest.predict(attributes);
+
+        for (Tree tree : randomForest.trees) {
+            Assert.assertSame(tree.getClassificationDictionary(), randomForest.getClassificationDictionary());
+        }
+        Assert.assertSame(prediction.getDictionary(), randomForest.getClassificationDictionary());
+        // another forest of the same trees, such as a pruned one, numbers the classifications the same way
+        final RandomForest sameTrees = new RandomForest(randomForest.trees, randomForest.getClassifications());
+        Assert.assertEquals(sameTrees.predict(attributes), prediction);
+        Assert.assertEquals(sameTrees.getClassificationDictionary(), randomForest.getClassificationDictionary());
+    }
+
+    private static List<AttributesMap> getBatch(int size) {
+        final List<AttributesMap> batch = Lists.newArrayList();
+        for (ClassifierInstance instance : TreeBuilderTestUtils.getInstances(size)) {
+            batch.add(instance.getAttributes());
+        }
+        return batch;
+    }
+}
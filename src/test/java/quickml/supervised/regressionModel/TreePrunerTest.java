@@ -0,0 +1,75 @@
+package quickml.supervised.regressionModel;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+import quickml.data.AttributesMap;
+import quickml.data.ClassifierInstance;
+import quickml.supervised.classifier.TreeBuilderTestUtils;
+import quickml.supervised.classifier.decisionTree.Tree;
+import quickml.supervised.classifier.decisionTree.TreeBuilder;
+import quickml.supervised.classifier.decisionTree.tree.Leaf;
+import quickml.supervised.classifier.decisionTree.tree.NumericBranch;
+import quickml.supervised.classifier.randomForest.RandomForest;
+import quickml.supervised.classifier.randomForest.RandomForestBuilder;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TreePrunerTest {
+
+    @Test
+    public void pruningRemovesNoiseSplitsButKeepsUsefulOne() {
+        final Random random = new Random(1);
+        final List<ClassifierInstance> instances = Lists.newArrayList();
+        for (int i = 0; i < 5000; i++) {
+            AttributesMap attributes = AttributesMap.newHashMap();
+            final double x = random.nextInt(1000);
+            attributes.put("x", x);
+            attributes.put("noise", (double) random.nextInt(1000));
+            // the label follows x, other than 10% of the time
+            instances.add(new ClassifierInstance(attributes, (x > 500) == (random.nextDouble() > 0.1) ? "high" : "low"));
+        }
+        final Tree tree = new TreeBuilder<ClassifierInstance>().maxDepth(10).buildPredictiveModel(instances);
+        final int originalSize = tree.node.size();
+
+        final TreePruner.Result<Tree> result = new TreePruner(0.001).prune(tree);
+
+        final Tree prunedTree = result.getPrunedModel();
+        assertTrue(result.toString(), result.getNodesRemoved() > 0);
+        assertEquals(originalSize - result.getNodesRemoved(), prunedTree.node.size());
+        assertTrue(result.toString(), result.getLossChange() >= 0);
+        assertTrue(prunedTree.node instanceof NumericBranch);
+        assertEquals("x", ((NumericBranch) prunedTree.node).attribute);
+        AttributesMap attributes = AttributesMap.newHashMap();
+        attributes.put("noise", 0.0);
+        attributes.put("x", 800.0);
+        assertEquals("high", prunedTree.getClassificationByMaxProb(attributes));
+        attributes.put("x", 200.0);
+        assertEquals("low", prunedTree.getClassificationByMaxProb(attributes));
+    }
+
+    @Test
+    public void largePenaltyCollapsesTreeIntoLeaf() {
+        final Tree tree = new TreeBuilder<ClassifierInstance>().maxDepth(6).buildPredictiveModel(TreeBuilderTestUtils.getInstances(2000));
+        final int originalSize = tree.node.size();
+
+        final TreePruner.Result<Tree> result = new TreePruner(1).prune(tree);
+
+        assertTrue(result.getPrunedModel().node instanceof Leaf);
+        assertEquals(originalSize - 1, result.getNodesRemoved());
+        assertTrue(result.getLossChange() > 0);
+    }
+
+    @Test
+    public void zeroPenaltyDoesNotIncreaseLoss() {
+        final RandomForest randomForest = new RandomForestBuilder<>(new TreeBuilder<ClassifierInstance>().maxDepth(8)).numTrees(4).buildPredictiveModel(TreeBuilderTestUtils.getInstances(2000));
+
+        final TreePruner.Result<RandomForest> result = new TreePruner(0).prune(randomForest);
+
+        assertEquals(4, result.getPrunedModel().trees.size());
+        assertEquals(0, result.getLossChange(), 1e-9);
+    }
+}